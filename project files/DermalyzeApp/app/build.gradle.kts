@@ -3,6 +3,9 @@ plugins {
     id("com.google.gms.google-services")
 }
 
+// ./gradlew connectedBenchmarkAndroidTest -PtestBuildType=benchmark
+val instrumentedBuildType = (project.findProperty("testBuildType") as String?) ?: "debug"
+
 android {
     namespace = "com.example.dermalyzeapp"
     compileSdk = 34
@@ -14,7 +17,12 @@ android {
         versionCode = 1
         versionName = "1.0"
 
-        testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+        // The benchmark runner only for the benchmark build; the debug tests keep the plain runner
+        testInstrumentationRunner = if (instrumentedBuildType == "benchmark") {
+            "androidx.benchmark.junit4.AndroidBenchmarkRunner"
+        } else {
+            "androidx.test.runner.AndroidJUnitRunner"
+        }
     }
 
     buildTypes {
@@ -22,7 +30,15 @@ android {
             isMinifyEnabled = false
             proguardFiles(getDefaultProguardFile("proguard-android-optimize.txt"), "proguard-rules.pro")
         }
+        // Release-like and not debuggable, so benchmark numbers are representative
+        create("benchmark") {
+            initWith(getByName("release"))
+            signingConfig = signingConfigs.getByName("debug")
+            matchingFallbacks += listOf("release")
+        }
     }
+
+    testBuildType = instrumentedBuildType
     
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_17
@@ -65,8 +81,14 @@ dependencies {
     implementation("com.github.bumptech.glide:glide:4.16.0")
     annotationProcessor("com.github.bumptech.glide:compiler:4.16.0")
 
+    // Local scan store and background sync
+    implementation("androidx.room:room-runtime:2.6.1")
+    annotationProcessor("androidx.room:room-compiler:2.6.1")
+    implementation("androidx.work:work-runtime:2.9.0")
+
     // Testing
     testImplementation("junit:junit:4.13.2")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
+    androidTestImplementation("androidx.benchmark:benchmark-junit4:1.2.3")
 }
\ No newline at end of file
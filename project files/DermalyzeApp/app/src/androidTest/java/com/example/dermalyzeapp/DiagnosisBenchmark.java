@@ -0,0 +1,255 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Debug;
+import android.os.Parcel;
+import android.util.Log;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.firebase.Timestamp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.support.common.FileUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Microbenchmarks for each stage of a diagnosis, on the sample images in
+ * {@code androidTest/assets/benchmark}.
+ *
+ * Run against the non-debuggable build with
+ * {@code ./gradlew connectedBenchmarkAndroidTest -PtestBuildType=benchmark}; results are also
+ * written as JSON to {@code app/build/outputs/connected_android_test_additional_output}.
+ * The inference benchmarks need {@code skin_model.tflite} in the app's assets and are
+ * skipped without it. No baseline numbers have been recorded yet; note the device and the
+ * results of a run on the unchanged code before using these to judge a change.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DiagnosisBenchmark {
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private Context context;
+    private byte[] photoBytes;
+    private byte[] pngBytes;
+    private Bitmap modelInput;
+    private Interpreter interpreter;
+    private ImagePreprocessor preprocessor;
+
+    @Before
+    public void setUp() throws IOException {
+        Context testContext = InstrumentationRegistry.getInstrumentation().getContext();
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        photoBytes = readAsset(testContext, "benchmark/sample_scan_12mp.jpg");
+        pngBytes = readAsset(testContext, "benchmark/sample_scan.png");
+        modelInput = SampledBitmapDecoder.decodeForModelInput(
+                readAsset(testContext, "benchmark/sample_scan.jpg"), true, null);
+
+        try {
+            interpreter = new Interpreter(FileUtil.loadMappedFile(context, ModelVariant.FLOAT32.getAssetPath()),
+                    InferenceOptions.defaults(1).toInterpreterOptions());
+            preprocessor = new ImagePreprocessor(interpreter.getInputTensor(0), interpreter.getOutputTensor(0));
+        } catch (IOException e) {
+            interpreter = null;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (interpreter != null) {
+            interpreter.close();
+        }
+        modelInput.recycle();
+    }
+
+    private static byte[] readAsset(Context context, String path) throws IOException {
+        try (InputStream in = context.getAssets().open(path)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    public void decodeModelInput_12mpJpeg() throws IOException {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Bitmap bitmap = SampledBitmapDecoder.decodeForModelInput(photoBytes, true, null);
+            state.pauseTiming();
+            bitmap.recycle();
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void decodeDisplay_12mpJpeg() throws IOException {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Bitmap bitmap = SampledBitmapDecoder.decodeForDisplay(photoBytes, ScanImage.DISPLAY_MAX_SIZE);
+            state.pauseTiming();
+            bitmap.recycle();
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void decodeModelInput_png() throws IOException {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Bitmap bitmap = SampledBitmapDecoder.decodeForModelInput(pngBytes, true, null);
+            state.pauseTiming();
+            bitmap.recycle();
+            state.resumeTiming();
+        }
+    }
+
+    @Test
+    public void preprocess() {
+        assumeTrue("Model asset not bundled", interpreter != null);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            preprocessor.process(modelInput);
+        }
+    }
+
+    @Test
+    public void interpreterRun() {
+        assumeTrue("Model asset not bundled", interpreter != null);
+        preprocessor.process(modelInput);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            interpreter.run(preprocessor.getInputBuffer(), preprocessor.getOutput());
+        }
+    }
+
+    @Test
+    public void argmax() {
+        float[] probabilities = {0.05f, 0.1f, 0.02f, 0.03f, 0.6f, 0.15f, 0.05f};
+        BenchmarkState state = benchmarkRule.getState();
+        int index = 0;
+        while (state.keepRunning()) {
+            index = SkinConditions.argmax(probabilities);
+        }
+        assertEquals(4, index);
+    }
+
+    @Test
+    public void postProcess() {
+        float[] probabilities = {0.05f, 0.1f, 0.02f, 0.03f, 0.6f, 0.15f, 0.05f};
+        float[] calibrated = new float[probabilities.length];
+        PredictionPostProcessor.TopK top = new PredictionPostProcessor.TopK(PredictionPostProcessor.TOP_K);
+        PredictionPostProcessor postProcessor = PredictionPostProcessor.getInstance(context);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            postProcessor.select(probabilities, calibrated, top);
+        }
+        assertEquals(4, top.indices[0]);
+    }
+
+    @Test
+    public void scanResultParcelRoundTrip() {
+        ScanResult result = new ScanResult("20240101_120000", "/storage/scans/scan_20240101_120000.jpg",
+                SkinConditions.NAMES[4], 0.87, new Timestamp(1704110400L, 0),
+                SkinConditions.recommendationsFor(SkinConditions.NAMES[4]));
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            Parcel parcel = Parcel.obtain();
+            result.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            ScanResult.CREATOR.createFromParcel(parcel);
+            parcel.recycle();
+        }
+    }
+
+    private File writeScanFile() throws IOException {
+        File scanFile = new File(context.getCacheDir(), "benchmark_scan.jpg");
+        try (FileOutputStream out = new FileOutputStream(scanFile)) {
+            out.write(photoBytes);
+        }
+        return scanFile;
+    }
+
+    @Test
+    public void pdfReport() throws IOException {
+        File scanFile = writeScanFile();
+        File pdfFile = new File(context.getCacheDir(), "benchmark_report.pdf");
+        String condition = SkinConditions.NAMES[4];
+        String recommendations = SkinConditions.recommendationsFor(condition);
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            DiagnosisReportWriter.write(context, pdfFile, Uri.fromFile(scanFile), condition, 0.87, recommendations,
+                    (done, total) -> { });
+        }
+        scanFile.delete();
+        pdfFile.delete();
+    }
+
+    /**
+     * Peak Java plus native heap growth while writing a report from the 12 MP sample. Decoding
+     * that photo in full would take 48 MB on its own; the report has to stay far below it.
+     */
+    @Test
+    public void pdfReport_peakMemory() throws Exception {
+        File scanFile = writeScanFile();
+        File pdfFile = new File(context.getCacheDir(), "benchmark_report.pdf");
+        String condition = SkinConditions.NAMES[4];
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        long baseline = (runtime.totalMemory() - runtime.freeMemory()) + Debug.getNativeHeapAllocatedSize();
+
+        long[] peak = {baseline};
+        Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                long used = (runtime.totalMemory() - runtime.freeMemory()) + Debug.getNativeHeapAllocatedSize();
+                synchronized (peak) {
+                    peak[0] = Math.max(peak[0], used);
+                }
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.start();
+        try {
+            DiagnosisReportWriter.write(context, pdfFile, Uri.fromFile(scanFile), condition, 0.87,
+                    SkinConditions.recommendationsFor(condition), (done, total) -> { });
+        } finally {
+            sampler.interrupt();
+            sampler.join();
+            scanFile.delete();
+        }
+
+        long peakGrowth;
+        synchronized (peak) {
+            peakGrowth = peak[0] - baseline;
+        }
+        Log.i("DiagnosisBenchmark", "pdfReport peak heap growth: " + peakGrowth / 1024 + " KB, file "
+                + pdfFile.length() / 1024 + " KB");
+        assertTrue("Peak heap growth " + peakGrowth + " bytes", peakGrowth < 16L * 1024 * 1024);
+        pdfFile.delete();
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.dermalyzeapp;
+
+import android.os.Bundle;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.google.firebase.Timestamp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * History rows over a generated list, for the scroll macrobenchmark. Only built into the
+ * {@code benchmark} build type, so it needs no sign-in and never ships.
+ */
+public class ScrollFixtureActivity extends AppCompatActivity {
+    public static final String EXTRA_ROW_COUNT = "rowCount";
+    private static final int DEFAULT_ROW_COUNT = 1000;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_scroll_fixture);
+
+        RecyclerView scanList = findViewById(R.id.scanList);
+        scanList.setLayoutManager(new LinearLayoutManager(this));
+        ScanHistoryAdapter adapter = new ScanHistoryAdapter(result -> { });
+        scanList.setAdapter(adapter);
+        adapter.submitList(fixture(getIntent().getIntExtra(EXTRA_ROW_COUNT, DEFAULT_ROW_COUNT)));
+    }
+
+    private static List<ScanResult> fixture(int count) {
+        List<ScanResult> scans = new ArrayList<>(count);
+        long newest = 1_700_000_000L;
+        for (int i = 0; i < count; i++) {
+            String condition = SkinConditions.NAMES[i % SkinConditions.NAMES.length];
+            // No image files: rows fall through to the error drawable, so the benchmark
+            // measures binding rather than decoding
+            scans.add(new ScanResult("fixture_" + i, null, condition, 0.5 + (i % 50) / 100.0,
+                    new Timestamp(newest - i * 3600L, 0), SkinConditions.recommendationsFor(condition)));
+        }
+        return scans;
+    }
+}
@@ -0,0 +1,488 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+
+import com.example.dermalyzeapp.databinding.ActivityBatchDiagnosisBinding;
+import com.google.firebase.Timestamp;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Diagnoses several gallery images in one go.
+ *
+ * Images are classified in batched calls on the shared engine while the progress bar follows
+ * the reading and decoding. Images already in {@link InferenceResultCache} are not classified
+ * again, and ones already in the user's history, or picked twice, are not saved twice. Photos
+ * the {@link ImageQualityGate} rejects are left out of the batch. Confident results are copied
+ * into the scans folder and saved in one transaction, so the history never shows half an
+ * import.
+ */
+public class BatchDiagnosisActivity extends AppCompatActivity {
+    private static final String TAG = "BatchDiagnosisActivity";
+    public static final String EXTRA_IMAGE_URIS = "imageUris";
+
+    private ActivityBatchDiagnosisBinding binding;
+    private FirebaseAuth mAuth;
+    private ScanHistoryRepository repository;
+    private ScanHistoryAdapter adapter;
+    private InferenceResultCache resultCache;
+    private InferenceExecutor.TaskHandle analysisTask;
+
+    /**
+     * The confident results of a batch with the files saved for them, in selection order.
+     */
+    private static final class BatchResult {
+        final List<ScanResult> results = new ArrayList<>();
+        final List<File> imageFiles = new ArrayList<>();
+        // Result cache key of each entry in results
+        final List<String> cacheKeys = new ArrayList<>();
+        int total;
+        int alreadySaved;
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        binding = ActivityBatchDiagnosisBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+
+        setSupportActionBar(binding.toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+
+        mAuth = FirebaseAuth.getInstance();
+        repository = LocalScanHistoryRepository.getInstance(this);
+        resultCache = InferenceResultCache.getInstance(this);
+
+        FirebaseUser currentUser = mAuth.getCurrentUser();
+        if (currentUser == null) {
+            Toast.makeText(this, R.string.error_user_not_logged_in, Toast.LENGTH_SHORT).show();
+            finish();
+            return;
+        }
+
+        adapter = new ScanHistoryAdapter(this::onItemClick);
+        binding.resultsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        binding.resultsRecyclerView.setAdapter(adapter);
+
+        ArrayList<String> uriStrings = getIntent().getStringArrayListExtra(EXTRA_IMAGE_URIS);
+        if (uriStrings == null || uriStrings.isEmpty()) {
+            Log.e(TAG, "No image URIs passed in Intent!");
+            finish();
+            return;
+        }
+        List<Uri> uris = new ArrayList<>();
+        for (String uriString : uriStrings) {
+            uris.add(Uri.parse(uriString));
+        }
+        analyzeImages(uris);
+    }
+
+    private void analyzeImages(List<Uri> uris) {
+        binding.batchProgressBar.setMax(uris.size());
+        binding.batchProgressBar.setProgress(0);
+        binding.statusTextView.setText(getString(R.string.batch_decoding_progress, 1, uris.size()));
+
+        Context appContext = getApplicationContext();
+        File storageDir = new File(getExternalFilesDir(null), "scans");
+        InferenceResultCache cache = resultCache;
+        String userId = mAuth.getCurrentUser().getUid();
+        analysisTask = InferenceExecutor.getBackgroundInstance().submit(progress -> {
+            SkinClassifierEngine engine;
+            try {
+                engine = SkinClassifierEngine.getInstance(appContext);
+            } catch (IOException e) {
+                throw new IOException(appContext.getString(R.string.error_initializing_tflite, e.getMessage()), e);
+            }
+
+            BatchRun run = new BatchRun(appContext, storageDir, cache, userId, engine);
+            try {
+                for (int i = 0; i < uris.size(); i++) {
+                    run.add(uris.get(i));
+                    progress.report(i + 1, uris.size());
+                }
+                return run.finish();
+            } catch (Exception e) {
+                run.discard();
+                throw e;
+            }
+        }, new InferenceExecutor.ProgressCallback<BatchResult>() {
+            @Override
+            public void onProgress(int done, int total) {
+                binding.batchProgressBar.setMax(total);
+                binding.batchProgressBar.setProgress(done);
+                binding.statusTextView.setText(getString(R.string.batch_decoding_progress,
+                        Math.min(done + 1, total), total));
+            }
+
+            @Override
+            public void onResult(BatchResult result) {
+                saveResults(result);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                showError("Error analyzing images: " + e.getMessage());
+            }
+
+            @Override
+            public void onDiscarded(BatchResult result) {
+                // The screen went away before saving; nothing refers to these files
+                deleteFiles(result.imageFiles);
+            }
+        });
+    }
+
+    /**
+     * One pass over the picked images, on the background executor.
+     *
+     * Each image is read once: its bytes are hashed, decoded for the model and, unless the
+     * quality gate rejects it, copied into the scans folder, then dropped. Images that still
+     * need classifying wait with their decoded input until a full batch is run; the files of
+     * those that turn out not to be confident are deleted again. Rejected images never reach
+     * the classifier.
+     */
+    private static final class BatchRun {
+        private final Context context;
+        private final File storageDir;
+        private final InferenceResultCache cache;
+        private final String userId;
+        private final SkinClassifierEngine engine;
+        private final String modelTag;
+        private final PredictionPostProcessor postProcessor;
+        private final String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        private final Timestamp firestoreTimestamp = Timestamp.now();
+        private final ImageQualityGate gate = new ImageQualityGate();
+        private final float[] calibrated = new float[SkinClassifierEngine.NUM_CLASSES];
+        private final PredictionPostProcessor.TopK top =
+                new PredictionPostProcessor.TopK(PredictionPostProcessor.TOP_K);
+        // Cache keys of the images seen so far; the same photo picked twice is handled once
+        private final Set<String> seen = new HashSet<>();
+        private final List<PendingImage> pending = new ArrayList<>();
+        // Confident results by their position among the distinct images, so they stay in selection order
+        private final TreeMap<Integer, KeptImage> kept = new TreeMap<>();
+        private int alreadySaved;
+        // Model input of the last rejected image, decoded into again by the next one
+        private Bitmap spare;
+
+        BatchRun(Context context, File storageDir, InferenceResultCache cache, String userId,
+                 SkinClassifierEngine engine) {
+            this.context = context;
+            this.storageDir = storageDir;
+            this.cache = cache;
+            this.userId = userId;
+            this.engine = engine;
+            this.modelTag = InferenceResultCache.modelTag(context, engine.getModelVariant(), false);
+            this.postProcessor = PredictionPostProcessor.getInstance(context);
+        }
+
+        void add(Uri uri) throws IOException, InterruptedException {
+            byte[] bytes = ScanImage.readBytes(context, uri);
+            String key = InferenceResultCache.key(bytes, modelTag);
+            if (!seen.add(key)) {
+                return;
+            }
+            int position = seen.size() - 1;
+            String id = timestamp + "_" + position;
+
+            InferenceResultCache.Entry cached = cache.get(key);
+            if (cached != null) {
+                if (cached.isSavedFor(userId)) {
+                    alreadySaved++;
+                    return;
+                }
+                int conditionIndex = select(cached.probabilities);
+                if (conditionIndex >= 0) {
+                    keep(position, id, key, writeImage(context, uri, bytes, imageFile(id)), conditionIndex);
+                }
+                return;
+            }
+
+            Bitmap modelInput = ScanImage.decodeModelInput(bytes, spare);
+            if (spare != null && spare != modelInput && !spare.isRecycled()) {
+                spare.recycle();
+            }
+            spare = null;
+            ImageQualityGate.Report quality = gate.check(modelInput);
+            if (quality.verdict == ImageQualityGate.Verdict.REJECT) {
+                // Not cached either, so it goes through the gate again if it is imported again
+                spare = modelInput;
+                return;
+            }
+            // Written while the bytes are at hand instead of reading the image again later
+            ScanImageWriter.SavedImage saved = writeImage(context, uri, bytes, imageFile(id));
+            pending.add(new PendingImage(position, id, key, modelInput, quality.issues, saved));
+            if (pending.size() == SkinClassifierEngine.MAX_BATCH_SIZE) {
+                classifyPending();
+            }
+        }
+
+        BatchResult finish() throws IOException, InterruptedException {
+            classifyPending();
+            recycleSpare();
+            BatchResult batch = new BatchResult();
+            batch.total = seen.size();
+            batch.alreadySaved = alreadySaved;
+            for (KeptImage image : kept.values()) {
+                batch.results.add(image.result);
+                batch.cacheKeys.add(image.key);
+                batch.imageFiles.addAll(image.files);
+            }
+            return batch;
+        }
+
+        /**
+         * Drops everything written or decoded so far, after a failure.
+         */
+        void discard() {
+            for (PendingImage image : pending) {
+                image.modelInput.recycle();
+                deleteFiles(image.files());
+            }
+            pending.clear();
+            for (KeptImage image : kept.values()) {
+                deleteFiles(image.files);
+            }
+            kept.clear();
+            recycleSpare();
+        }
+
+        private void classifyPending() throws IOException, InterruptedException {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<Bitmap> inputs = new ArrayList<>(pending.size());
+            for (PendingImage image : pending) {
+                inputs.add(image.modelInput);
+            }
+            float[][] probabilities;
+            engine.acquire();
+            try {
+                probabilities = engine.classifyBatch(inputs);
+            } finally {
+                engine.release();
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                PendingImage image = pending.get(i);
+                image.modelInput.recycle();
+                // Cached uncalibrated, so a new calibration applies to earlier results too
+                cache.put(image.key, probabilities[i], image.qualityIssues);
+                int conditionIndex = select(probabilities[i]);
+                if (conditionIndex >= 0) {
+                    keep(image.position, image.id, image.key, image.saved, conditionIndex);
+                } else {
+                    deleteFiles(image.files());
+                }
+            }
+            pending.clear();
+        }
+
+        private int select(float[] probabilities) {
+            ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.POSTPROCESS);
+            try {
+                return postProcessor.select(probabilities, calibrated, top);
+            } finally {
+                span.end();
+            }
+        }
+
+        private void keep(int position, String id, String key, ScanImageWriter.SavedImage saved, int conditionIndex) {
+            String condition = SkinConditions.NAMES[conditionIndex];
+            ScanResult result = new ScanResult(id, saved.image.getAbsolutePath(), condition,
+                    calibrated[conditionIndex], firestoreTimestamp, SkinConditions.recommendationsFor(condition));
+            result.setConditionIndex(conditionIndex);
+            if (saved.thumbnail != null) {
+                result.setThumbnailPath(saved.thumbnail.getAbsolutePath());
+            }
+            kept.put(position, new KeptImage(result, key, filesOf(saved)));
+        }
+
+        private File imageFile(String id) {
+            return new File(storageDir, "scan_" + id + ".jpg");
+        }
+
+        private void recycleSpare() {
+            if (spare != null) {
+                spare.recycle();
+                spare = null;
+            }
+        }
+    }
+
+    private static final class PendingImage {
+        final int position;
+        final String id;
+        final String key;
+        final Bitmap modelInput;
+        final Set<ImageQualityGate.Issue> qualityIssues;
+        final ScanImageWriter.SavedImage saved;
+
+        PendingImage(int position, String id, String key, Bitmap modelInput,
+                     Set<ImageQualityGate.Issue> qualityIssues, ScanImageWriter.SavedImage saved) {
+            this.position = position;
+            this.id = id;
+            this.key = key;
+            this.modelInput = modelInput;
+            this.qualityIssues = qualityIssues;
+            this.saved = saved;
+        }
+
+        List<File> files() {
+            return filesOf(saved);
+        }
+    }
+
+    private static final class KeptImage {
+        final ScanResult result;
+        final String key;
+        final List<File> files;
+
+        KeptImage(ScanResult result, String key, List<File> files) {
+            this.result = result;
+            this.key = key;
+            this.files = files;
+        }
+    }
+
+    private static List<File> filesOf(ScanImageWriter.SavedImage saved) {
+        List<File> files = new ArrayList<>(2);
+        files.add(saved.image);
+        if (saved.thumbnail != null) {
+            files.add(saved.thumbnail);
+        }
+        return files;
+    }
+
+    private static ScanImageWriter.SavedImage writeImage(Context context, Uri uri, byte[] bytes, File imageFile)
+            throws IOException {
+        // Same policy as a single scan; already on a background thread, so written in place
+        return ScanImageWriter.write(context, uri, bytes, out -> {
+            Bitmap bitmap = ScanImage.decodeOriented(bytes, ScanImage.DISPLAY_MAX_SIZE);
+            try {
+                if (!bitmap.compress(Bitmap.CompressFormat.JPEG, 85, out)) {
+                    throw new IOException("Failed to compress image");
+                }
+            } finally {
+                bitmap.recycle();
+            }
+        }, thumbnail -> {
+            Bitmap bitmap = ScanImage.decodeOriented(bytes, ScanThumbnails.SIZE * 2);
+            try {
+                ScanThumbnails.write(bitmap, thumbnail);
+            } finally {
+                bitmap.recycle();
+            }
+        }, imageFile);
+    }
+
+    private void saveResults(BatchResult batch) {
+        int skipped = batch.total - batch.results.size() - batch.alreadySaved;
+        if (batch.results.isEmpty()) {
+            binding.statusTextView.setText(getString(R.string.batch_saved, 0, batch.total, skipped, batch.alreadySaved));
+            return;
+        }
+        if (mAuth.getCurrentUser() == null) {
+            deleteFiles(batch.imageFiles);
+            showError("Error: User not logged in");
+            return;
+        }
+
+        binding.statusTextView.setText(R.string.batch_saving);
+        String userId = mAuth.getCurrentUser().getUid();
+        repository.save(userId, batch.results, new ScanHistoryRepository.SaveCallback() {
+            @Override
+            public void onSaved() {
+                Log.d(TAG, "Saved " + batch.results.size() + " scans in one batch");
+                recordSavedScans(userId, batch);
+                adapter.submitList(new ArrayList<>(batch.results));
+                binding.statusTextView.setText(getString(R.string.batch_saved,
+                        batch.results.size(), batch.total, skipped, batch.alreadySaved));
+                binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_green_dark, null));
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Failed to save batch", e);
+                deleteFiles(batch.imageFiles);
+                showError("Failed to save results: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Remembers which scan each image was saved as, so importing it again is skipped.
+     */
+    private void recordSavedScans(String userId, BatchResult batch) {
+        InferenceResultCache cache = resultCache;
+        InferenceExecutor.getBackgroundInstance().submit(() -> {
+            for (int i = 0; i < batch.results.size(); i++) {
+                cache.recordScan(batch.cacheKeys.get(i), userId, batch.results.get(i).getId());
+            }
+            return null;
+        }, new InferenceExecutor.Callback<Void>() {
+            @Override
+            public void onResult(Void result) {
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.w(TAG, "Could not record saved scans in the result cache", e);
+            }
+        });
+    }
+
+    private static void deleteFiles(List<File> files) {
+        for (File file : files) {
+            if (file.exists()) {
+                file.delete();
+            }
+        }
+    }
+
+    private void showError(String message) {
+        binding.statusTextView.setText(message);
+        binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+    }
+
+    private void onItemClick(ScanResult result) {
+        Intent intent = new Intent(this, DiagnosisActivity.class);
+        intent.putExtra(DiagnosisActivity.EXTRA_SCAN_RESULT, result);
+        startActivity(intent);
+    }
+
+    @Override
+    public boolean onSupportNavigateUp() {
+        finish();
+        return true;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (analysisTask != null) {
+            analysisTask.cancel();
+        }
+    }
+}
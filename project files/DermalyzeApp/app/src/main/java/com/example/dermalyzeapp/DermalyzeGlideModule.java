@@ -0,0 +1,35 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+
+/**
+ * Sizes Glide's caches for the scan lists: enough memory for a couple of screens of rows,
+ * and a bounded disk cache for rows that still have to be sampled from the full image.
+ */
+@GlideModule
+public final class DermalyzeGlideModule extends AppGlideModule {
+    private static final long DISK_CACHE_BYTES = 50L * 1024 * 1024;
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context)
+                .setMemoryCacheScreens(2)
+                .build();
+        builder.setMemoryCache(new LruResourceCache(calculator.getMemoryCacheSize()));
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, "scan_images", DISK_CACHE_BYTES));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
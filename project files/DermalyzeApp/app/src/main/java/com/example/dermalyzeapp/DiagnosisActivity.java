@@ -1,126 +1,61 @@
 package com.example.dermalyzeapp;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.View;
 import android.widget.Toast;
 
 import androidx.activity.OnBackPressedCallback;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.FileProvider;
 
+import com.bumptech.glide.Glide;
 import com.example.dermalyzeapp.databinding.ActivityDiagnosisBinding;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.storage.FirebaseStorage;
-import com.google.firebase.storage.StorageReference;
-
-import com.itextpdf.kernel.pdf.PdfDocument;
-import com.itextpdf.kernel.pdf.PdfWriter;
-import com.itextpdf.layout.Document;
-import com.itextpdf.layout.element.Paragraph;
-import com.itextpdf.layout.element.Image;
-import com.itextpdf.io.image.ImageDataFactory;
-
-import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.support.common.FileUtil;
-import org.tensorflow.lite.support.common.ops.NormalizeOp;
-import org.tensorflow.lite.support.image.ImageProcessor;
-import org.tensorflow.lite.support.image.TensorImage;
-import org.tensorflow.lite.support.image.ops.ResizeOp;
-
-import java.io.ByteArrayOutputStream;
+
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.MappedByteBuffer;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Locale;
+import java.util.Set;
 
-import android.content.BroadcastReceiver;
-import android.content.IntentFilter;
 import android.content.Context;
 
 public class DiagnosisActivity extends AppCompatActivity {
+    // Id of a camera capture parked in PendingCaptures, passed instead of an image URI
+    public static final String EXTRA_CAPTURE_ID = "captureId";
+    // A scan from the history, shown as it was saved instead of being analysed again
+    public static final String EXTRA_SCAN_RESULT = "scanResult";
+
     private ActivityDiagnosisBinding binding;
     private FirebaseAuth mAuth;
-    private FirebaseFirestore db;
-    private FirebaseStorage storage;
+    private ScanHistoryRepository repository;
     private String imageUriString;
+    private String captureId;
     private String condition;
+    private int conditionIndex;
     private double confidence;
     private String recommendations;
     
-    private Interpreter tflite;
-    private static final int IMAGE_SIZE = 224;
-    private static final float PROBABILITY_THRESHOLD = 0.5f;
-    private static final String MODEL_PATH = "skin_model.tflite";
-
-    private static final String[] SKIN_CONDITIONS = {
-        "Actinic Keratoses / Bowen's Disease",
-        "Basal Cell Carcinoma",
-        "Benign Keratosis-like Lesions",
-        "Dermatofibroma",
-        "Melanoma",
-        "Melanocytic Nevi (moles)",
-        "Vascular Lesions"
-    };
-
-    private static final String[] CONDITION_DESCRIPTIONS = {
-        // akiec
-        "Actinic Keratoses are pre-cancerous skin growths that typically appear on sun-damaged skin. " +
-        "They often present as rough, scaly patches that can be pink, red, or flesh-colored. " +
-        "Bowen's Disease is an early form of skin cancer that appears as a persistent, scaly red patch.",
-
-        // bcc
-        "Basal Cell Carcinoma is the most common form of skin cancer. It typically appears as a " +
-        "pearly, waxy bump; a flat, flesh-colored or brown scar-like lesion; or a bleeding or " +
-        "scabbing sore that heals and returns. It's usually found on sun-exposed areas.",
-
-        // bkl
-        "Benign Keratosis-like Lesions are non-cancerous skin growths that often appear with age. " +
-        "They can be flat or slightly raised, with colors ranging from light tan to dark brown. " +
-        "These lesions are harmless but may resemble more serious conditions.",
-
-        // df
-        "Dermatofibroma is a common benign skin tumor that often appears as a firm, raised growth " +
-        "that can be pink, gray, red, or brown. They're usually round, relatively small, and may " +
-        "dimple when pressed from the sides.",
-
-        // mel
-        "Melanoma is the most dangerous form of skin cancer. It develops in melanocytes (pigment-producing cells) " +
-        "and often resembles moles. Key warning signs include asymmetry, irregular borders, color " +
-        "variations, diameter >6mm, and evolving size/shape/color.",
-
-        // nv
-        "Melanocytic Nevi (moles) are common, usually benign skin growths that develop from melanocytes. " +
-        "They can be flat or raised, round or oval, and range in color from pink to dark brown. " +
-        "While most are harmless, any changes should be monitored.",
-
-        // vasc
-        "Vascular Lesions are abnormalities of blood vessels appearing on or under the skin. " +
-        "They can appear as red, purple, or blue marks and may be flat or raised. Types include " +
-        "hemangiomas, port wine stains, and spider veins."
-    };
+    private InferenceExecutor.TaskHandle analysisTask;
+    private InferenceExecutor.TaskHandle reportTask;
+    private ScanImage scanImage;
+    // The stored scan once saved, the picked image until then
+    private Uri reportImageUri;
+    private InferenceResultCache resultCache;
+    // Content hash of the analysed image, and its cached result when it was not classified again
+    private String cacheKey;
+    private InferenceResultCache.Entry cachedResult;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        Log.d("DiagnosisActivity", "onCreate called - DiagnosisActivity is starting!");
-        if (getIntent() != null && getIntent().getExtras() != null) {
-            for (String key : getIntent().getExtras().keySet()) {
-                Object value = getIntent().getExtras().get(key);
-                Log.d("DiagnosisActivity", "Intent extra: " + key + " = " + value);
-            }
-        } else {
-            Log.d("DiagnosisActivity", "No extras in Intent!");
-        }
         binding = ActivityDiagnosisBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
@@ -138,8 +73,8 @@ public class DiagnosisActivity extends AppCompatActivity {
         });
 
         mAuth = FirebaseAuth.getInstance();
-        db = FirebaseFirestore.getInstance();
-        storage = FirebaseStorage.getInstance();
+        repository = LocalScanHistoryRepository.getInstance(this);
+        resultCache = InferenceResultCache.getInstance(this);
 
         FirebaseUser currentUser = mAuth.getCurrentUser();
         if (currentUser == null) {
@@ -148,204 +83,235 @@ public class DiagnosisActivity extends AppCompatActivity {
             return;
         }
 
-        try {
-            initializeTFLiteInterpreter();
-        } catch (IOException e) {
-            Toast.makeText(this, getString(R.string.error_initializing_tflite, e.getMessage()), Toast.LENGTH_SHORT).show();
-            finish();
-            return;
-        }
-
         imageUriString = getIntent().getStringExtra("imageUri");
-        Log.d("DiagnosisActivity", "imageUriString from Intent: " + imageUriString);
-        if (imageUriString != null) {
-            displayImage();
+        captureId = getIntent().getStringExtra(EXTRA_CAPTURE_ID);
+        ScanResult savedScan = readSavedScan(getIntent());
+        if (savedScan != null) {
+            showSavedScan(savedScan);
+        } else if (imageUriString != null || captureId != null) {
             analyzeImage();
         } else {
             Log.e("DiagnosisActivity", "No imageUriString passed in Intent!");
         }
 
         binding.generatePdfButton.setOnClickListener(v -> generatePdfReport());
+        binding.cancelReportButton.setOnClickListener(v -> cancelPdfReport());
     }
 
-    private void initializeTFLiteInterpreter() throws IOException {
-        MappedByteBuffer tfliteModel = FileUtil.loadMappedFile(this, MODEL_PATH);
-        tflite = new Interpreter(tfliteModel);
-    }
-
-    private void displayImage() {
-        try {
-            Uri imageUri = Uri.parse(imageUriString);
-            File imageFile = new File(imageUri.getPath());
-            Log.d("DiagnosisActivity", "Trying to load image from: " + imageFile.getAbsolutePath() + ", exists: " + imageFile.exists());
-            Bitmap bitmap = BitmapFactory.decodeStream(getContentResolver().openInputStream(imageUri));
-            binding.scannedImage.setImageBitmap(bitmap);
-        } catch (Exception e) {
-            Toast.makeText(this, getString(R.string.error_loading_image, e.getMessage()), Toast.LENGTH_SHORT).show();
-            Log.e("DiagnosisActivity", "Error loading image: " + e.getMessage(), e);
+    private static final class AnalysisResult {
+        final ScanImage image;
+        // Null when the quality gate rejected the image
+        final PredictionPostProcessor.Prediction prediction;
+        final String cacheKey;
+        final InferenceResultCache.Entry cached;
+        // The gate's report when it rejected the image, otherwise null
+        final ImageQualityGate.Report rejection;
+        // Warnings for an image that passed; cached results keep the ones from their first check
+        final Set<ImageQualityGate.Issue> qualityIssues;
+
+        AnalysisResult(ScanImage image, PredictionPostProcessor.Prediction prediction, String cacheKey,
+                       InferenceResultCache.Entry cached, ImageQualityGate.Report rejection,
+                       Set<ImageQualityGate.Issue> qualityIssues) {
+            this.image = image;
+            this.prediction = prediction;
+            this.cacheKey = cacheKey;
+            this.cached = cached;
+            this.rejection = rejection;
+            this.qualityIssues = qualityIssues;
         }
     }
 
     private void analyzeImage() {
-        try {
-            binding.statusTextView.setText("Analyzing image...");
-            binding.statusTextView.setTextColor(getResources().getColor(android.R.color.black, null));
+        binding.statusTextView.setText("Analyzing image...");
+        binding.statusTextView.setTextColor(getResources().getColor(android.R.color.black, null));
+        binding.analysisProgressBar.setVisibility(View.VISIBLE);
 
-            Uri imageUri = Uri.parse(imageUriString);
-            Bitmap bitmap = BitmapFactory.decodeStream(getContentResolver().openInputStream(imageUri));
-            if (bitmap == null) {
-                binding.statusTextView.setText("Error: Could not decode image.");
-                binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
-                Toast.makeText(this, "Error: Could not decode image.", Toast.LENGTH_LONG).show();
-                return;
+        Uri imageUri = imageUriString != null ? Uri.parse(imageUriString) : null;
+        PendingCaptures.Capture capture = captureId != null ? PendingCaptures.get(captureId) : null;
+        if (imageUri == null && capture == null) {
+            binding.analysisProgressBar.setVisibility(View.GONE);
+            binding.statusTextView.setText("The captured photo is no longer available. Please take it again.");
+            binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
+            return;
+        }
+        // Until it is saved, a capture only exists in memory and the report goes without a picture
+        reportImageUri = imageUri;
+        Context appContext = getApplicationContext();
+        InferenceResultCache cache = resultCache;
+        analysisTask = InferenceExecutor.getInstance().submit(() -> {
+            SkinClassifierEngine engine;
+            try {
+                engine = SkinClassifierEngine.getInstance(appContext);
+            } catch (IOException e) {
+                throw new IOException(appContext.getString(R.string.error_initializing_tflite, e.getMessage()), e);
             }
 
-            // Preprocess the image
-            TensorImage tensorImage = preprocessImage(bitmap);
-
-            // Run inference
-            float[][] outputArray = new float[1][SKIN_CONDITIONS.length];
-            tflite.run(tensorImage.getBuffer(), outputArray);
-
-            // Process results
-            int maxIndex = 0;
-            float maxConfidence = outputArray[0][0];
-
-            for (int i = 1; i < outputArray[0].length; i++) {
-                if (outputArray[0][i] > maxConfidence) {
-                    maxConfidence = outputArray[0][i];
-                    maxIndex = i;
+            engine.acquire();
+            try {
+                byte[] bytes = capture != null ? capture.jpeg : ScanImage.readBytes(appContext, imageUri);
+                boolean augmented = TestTimeAugmentation.isEnabled(appContext);
+                String key = InferenceResultCache.key(bytes,
+                        InferenceResultCache.modelTag(appContext, engine.getModelVariant(), augmented));
+                InferenceResultCache.Entry cached = cache.get(key);
+                // Seen this exact image with this model before; only the display bitmap is needed.
+                // Otherwise decode once; display, inference, saving and the PDF all share this image
+                ScanImage image = decodeScan(imageUri, capture, bytes, cached == null);
+                try {
+                    if (cached != null) {
+                        // The gate's warnings from the first check are shown again
+                        return new AnalysisResult(image, postProcess(appContext, cached.probabilities), key,
+                                cached, null, cached.qualityIssues);
+                    }
+                    // Blurry or badly exposed photos are not worth classifying or storing
+                    ImageQualityGate.Report quality = new ImageQualityGate().check(image.getModelInput());
+                    if (quality.verdict == ImageQualityGate.Verdict.REJECT) {
+                        return new AnalysisResult(image, null, key, null, quality, quality.issues);
+                    }
+                    // Run inference on the shared engine, averaged over augmented views when enabled
+                    float[] probabilities = augmented
+                            ? TestTimeAugmentation.classify(engine, image.getModelInput())
+                            : engine.classify(image.getModelInput());
+                    // Cached uncalibrated, so a new calibration applies to earlier results too
+                    cache.put(key, probabilities, quality.issues);
+                    return new AnalysisResult(image, postProcess(appContext, probabilities), key, null, null,
+                            quality.issues);
+                } catch (Exception e) {
+                    // Also how a cancelled task usually ends, interrupted while classifying
+                    image.recycle();
+                    throw e;
+                }
+            } finally {
+                engine.release();
+            }
+        }, new InferenceExecutor.Callback<AnalysisResult>() {
+            @Override
+            public void onResult(AnalysisResult result) {
+                binding.analysisProgressBar.setVisibility(View.GONE);
+                scanImage = result.image;
+                cacheKey = result.cacheKey;
+                cachedResult = result.cached;
+                binding.scannedImage.setImageBitmap(scanImage.getDisplayBitmap());
+                if (result.prediction == null) {
+                    onQualityRejected(result.rejection);
+                    return;
+                }
+                onAnalysisComplete(result.prediction);
+                if (!result.qualityIssues.isEmpty()) {
+                    Toast.makeText(DiagnosisActivity.this, getString(R.string.quality_warning,
+                            ImageQualityGate.describe(DiagnosisActivity.this, result.qualityIssues)),
+                            Toast.LENGTH_LONG).show();
                 }
             }
 
-            if (maxConfidence >= PROBABILITY_THRESHOLD) {
-                condition = SKIN_CONDITIONS[maxIndex];
-                confidence = maxConfidence;
-                recommendations = generateRecommendations(condition);
+            @Override
+            public void onDiscarded(AnalysisResult result) {
+                // Finished after the screen went away; nothing will show or recycle the bitmaps
+                result.image.recycle();
+            }
 
-                updateUI();
-                saveResults();
-            } else {
-                binding.statusTextView.setText("Unable to confidently diagnose.");
+            @Override
+            public void onError(Exception e) {
+                binding.analysisProgressBar.setVisibility(View.GONE);
+                binding.statusTextView.setText("Error analyzing image: " + e.getMessage());
                 binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
-                Toast.makeText(this, "Unable to confidently diagnose.", Toast.LENGTH_LONG).show();
+                Toast.makeText(DiagnosisActivity.this, "Error analyzing image: " + e.getMessage(), Toast.LENGTH_LONG).show();
             }
+        });
+    }
 
-            Log.d("DiagnosisActivity", "Model output: " + java.util.Arrays.toString(outputArray[0]));
-        } catch (Exception e) {
-            binding.statusTextView.setText("Error analyzing image: " + e.getMessage());
-            binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
-            Toast.makeText(this, "Error analyzing image: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            e.printStackTrace();
+    private static ScanImage decodeScan(Uri imageUri, PendingCaptures.Capture capture, byte[] bytes,
+                                        boolean withModelInput) throws IOException {
+        return capture != null
+                ? ScanImage.decodeCapture(capture.jpeg, capture.rotationDegrees, withModelInput)
+                : ScanImage.decode(imageUri, bytes, withModelInput);
+    }
+
+    private static PredictionPostProcessor.Prediction postProcess(Context context, float[] probabilities) {
+        ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.POSTPROCESS);
+        try {
+            return PredictionPostProcessor.getInstance(context).process(probabilities);
+        } finally {
+            span.end();
         }
     }
 
-    private TensorImage preprocessImage(Bitmap bitmap) {
-        // Initialize tensor image
-        TensorImage tensorImage = new TensorImage();
-        tensorImage.load(bitmap);
-        
-        // Create image processor
-        ImageProcessor imageProcessor = new ImageProcessor.Builder()
-                .add(new ResizeOp(IMAGE_SIZE, IMAGE_SIZE, ResizeOp.ResizeMethod.BILINEAR))
-                .add(new NormalizeOp(0f, 255f)) // Normalize to [0,1]
-                .build();
-        
-        // Process the image
-        return imageProcessor.process(tensorImage);
+    private void onQualityRejected(ImageQualityGate.Report quality) {
+        String message = getString(R.string.quality_rejected, ImageQualityGate.describe(this, quality.issues));
+        Log.d("DiagnosisActivity", "Rejected by quality gate: sharpness " + quality.sharpness
+                + ", mean luma " + quality.meanLuma);
+        binding.statusTextView.setText(message);
+        binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+    }
+
+    private void onAnalysisComplete(PredictionPostProcessor.Prediction prediction) {
+        if (prediction.isConfident()) {
+            conditionIndex = prediction.conditionIndex;
+            condition = SkinConditions.NAMES[conditionIndex];
+            confidence = prediction.getConfidence();
+            recommendations = SkinConditions.recommendationsFor(condition);
+
+            updateUI();
+            FirebaseUser user = mAuth.getCurrentUser();
+            if (cachedResult != null && user != null && cachedResult.isSavedFor(user.getUid())) {
+                // The same image is already in this user's history; don't store a second copy
+                binding.statusTextView.setText("Analysis complete - Already in your history");
+                binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_green_dark, null));
+            } else {
+                saveResults();
+            }
+        } else {
+            int closest = prediction.top.indices[0];
+            binding.statusTextView.setText(String.format(Locale.US,
+                    "Unable to confidently diagnose. Closest match: %s (%.1f%%)",
+                    SkinConditions.NAMES[closest], prediction.top.probabilities[0] * 100));
+            binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
+            Toast.makeText(this, "Unable to confidently diagnose.", Toast.LENGTH_LONG).show();
+        }
     }
 
     private void updateUI() {
+        showDiagnosis();
+        binding.statusTextView.setText("Analysis complete - Saving results...");
+        binding.statusTextView.setTextColor(getResources().getColor(android.R.color.black, null));
+    }
+
+    private void showDiagnosis() {
         binding.conditionTextView.setText(condition);
         binding.confidenceTextView.setText(String.format(Locale.US, "Confidence: %.1f%%", confidence * 100));
-        binding.conditionDescriptionTextView.setText(CONDITION_DESCRIPTIONS[getConditionIndex(condition)]);
+        binding.conditionDescriptionTextView.setText(
+                conditionIndex >= 0 ? SkinConditions.DESCRIPTIONS[conditionIndex] : "");
         binding.recommendationsTextView.setText(recommendations);
-        binding.statusTextView.setText("Analysis complete - Saving results...");
-        binding.statusTextView.setTextColor(getResources().getColor(android.R.color.black, null));
     }
 
-    private int getConditionIndex(String condition) {
-        for (int i = 0; i < SKIN_CONDITIONS.length; i++) {
-            if (SKIN_CONDITIONS[i].equals(condition)) {
-                return i;
-            }
+    private static ScanResult readSavedScan(Intent intent) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            return intent.getParcelableExtra(EXTRA_SCAN_RESULT, ScanResult.class);
         }
-        return 0;
+        return intent.getParcelableExtra(EXTRA_SCAN_RESULT);
     }
 
-    private String generateRecommendations(String condition) {
-        switch (condition) {
-            case "Actinic Keratoses / Bowen's Disease":
-                return "ATTENTION: Actinic Keratoses detected, which may develop into skin cancer.\n\n" +
-                       "Recommended actions:\n" +
-                       "1. Schedule an appointment with a dermatologist\n" +
-                       "2. Protect the affected area from sun exposure\n" +
-                       "3. Use prescribed sunscreen regularly\n" +
-                       "4. Monitor for any changes in size or appearance\n\n" +
-                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
-
-            case "Basal Cell Carcinoma":
-                return "URGENT: The AI model suggests this may be Basal Cell Carcinoma, a type of skin cancer.\n\n" +
-                       "Recommended actions:\n" +
-                       "1. Schedule an immediate appointment with a dermatologist\n" +
-                       "2. Do not delay seeking professional medical attention\n" +
-                       "3. Bring this image and analysis to your appointment\n" +
-                       "4. Avoid sun exposure to the affected area\n\n" +
-                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
-
-            case "Benign Keratosis-like Lesions":
-                return "The AI model suggests these are benign (non-cancerous) growths.\n\n" +
-                       "Recommended actions:\n" +
-                       "1. Monitor the lesions for any changes\n" +
-                       "2. Schedule a routine check-up with a dermatologist\n" +
-                       "3. Protect your skin from sun damage\n" +
-                       "4. Document any changes in size or appearance\n\n" +
-                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
-
-            case "Dermatofibroma":
-                return "The AI model suggests this may be a Dermatofibroma, which is typically benign.\n\n" +
-                       "Recommended actions:\n" +
-                       "1. No immediate action required if stable\n" +
-                       "2. Monitor for any changes in size or color\n" +
-                       "3. Consider a routine dermatologist check-up\n" +
-                       "4. Document any changes or symptoms\n\n" +
-                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
-
-            case "Melanoma":
-                return "URGENT: The AI model suggests this may be Melanoma, a serious form of skin cancer.\n\n" +
-                       "Recommended actions:\n" +
-                       "1. Seek IMMEDIATE medical attention\n" +
-                       "2. Schedule an emergency appointment with a dermatologist\n" +
-                       "3. Bring this image and analysis to your appointment\n" +
-                       "4. Do not delay - early treatment is crucial\n\n" +
-                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
-
-            case "Melanocytic Nevi (moles)":
-                return "The AI model suggests this is a common mole (Melanocytic Nevus).\n\n" +
-                       "Recommended actions:\n" +
-                       "1. Regular self-monitoring using the ABCDE rule:\n" +
-                       "   - Asymmetry\n" +
-                       "   - Border irregularity\n" +
-                       "   - Color variation\n" +
-                       "   - Diameter > 6mm\n" +
-                       "   - Evolving size/shape\n" +
-                       "2. Annual skin check with a dermatologist\n" +
-                       "3. Protect from sun exposure\n\n" +
-                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
-
-            case "Vascular Lesions":
-                return "The AI model suggests this may be a vascular lesion.\n\n" +
-                       "Recommended actions:\n" +
-                       "1. Schedule a consultation with a dermatologist\n" +
-                       "2. Monitor for any changes in size or color\n" +
-                       "3. Document any associated symptoms\n" +
-                       "4. Protect the area from injury\n\n" +
-                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
-
-            default:
-                return "Please consult with a healthcare professional for proper diagnosis and treatment.\n\n" +
-                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
+    private void showSavedScan(ScanResult scan) {
+        condition = scan.getCondition();
+        conditionIndex = scan.getConditionIndex();
+        confidence = scan.getConfidence();
+        recommendations = scan.getRecommendations();
+        showDiagnosis();
+
+        String imagePath = scan.getImageUrl();
+        if (imagePath != null) {
+            Uri imageUri = Uri.parse(imagePath);
+            // Scans saved on this device store a plain file path; the report only embeds local images
+            if (imageUri.getScheme() == null) {
+                reportImageUri = Uri.fromFile(new File(imagePath));
+            }
+            Glide.with(this)
+                    .load(imagePath)
+                    .error(R.drawable.ic_error_image)
+                    .into(binding.scannedImage);
         }
+        binding.statusTextView.setText("Saved scan");
+        binding.statusTextView.setTextColor(getResources().getColor(android.R.color.black, null));
     }
 
     private void saveResults() {
@@ -364,183 +330,165 @@ public class DiagnosisActivity extends AppCompatActivity {
             Toast.makeText(this, "Saving results...", Toast.LENGTH_SHORT).show();
             Log.d("DiagnosisActivity", "Starting save process for user: " + userId);
             
-            // Validate image URI
-            if (imageUriString == null || imageUriString.isEmpty()) {
-                throw new IllegalArgumentException("Image URI is null or empty");
+            // Validate the decoded image
+            if (scanImage == null || scanImage.getDisplayBitmap() == null) {
+                throw new IllegalArgumentException("Could not decode image");
             }
 
-            Uri imageUri = Uri.parse(imageUriString);
-            if (imageUri == null) {
-                throw new IllegalArgumentException("Invalid image URI");
-            }
+            // Copy the original bytes on the I/O thread; only re-encode when the policy asks for it
+            // or when they would be stored sideways
+            File imageFile = new File(new File(getExternalFilesDir(null), "scans"), "scan_" + timestamp + ".jpg");
+            ScanImage image = scanImage;
+            ScanImageWriter.writeAsync(this, image.getSourceUri(), image.getOriginalBytes(), !image.isOriginalUpright(),
+                    out -> image.writeDisplayJpeg(out, 85), image::writeThumbnail, imageFile,
+                    new InferenceExecutor.Callback<ScanImageWriter.SavedImage>() {
+                        @Override
+                        public void onResult(ScanImageWriter.SavedImage saved) {
+                            Log.d("DiagnosisActivity", "Image saved to: " + saved.image.getAbsolutePath());
+                            reportImageUri = Uri.fromFile(saved.image);
+                            ScanResult scanResult = new ScanResult(
+                                    timestamp,
+                                    saved.image.getAbsolutePath(),
+                                    condition,
+                                    confidence,
+                                    firestoreTimestamp,
+                                    recommendations
+                            );
+                            scanResult.setConditionIndex(conditionIndex);
+                            if (saved.thumbnail != null) {
+                                scanResult.setThumbnailPath(saved.thumbnail.getAbsolutePath());
+                            }
+                            saveScan(userId, scanResult, saved);
+                        }
 
-            // Load and validate bitmap
-            Bitmap originalBitmap = null;
-            try {
-                originalBitmap = BitmapFactory.decodeStream(getContentResolver().openInputStream(imageUri));
-            } catch (Exception e) {
-                throw new IllegalArgumentException("Could not load image: " + e.getMessage());
-            }
+                        @Override
+                        public void onError(Exception e) {
+                            showSaveError("Error processing image: " + e.getMessage());
+                        }
+                    });
+        } catch (Exception e) {
+            Log.e("DiagnosisActivity", "Error in saveResults", e);
+            showSaveError("Error processing image: " + e.getMessage());
+        }
+    }
 
-            if (originalBitmap == null) {
-                throw new IllegalArgumentException("Could not decode image");
+    private void saveScan(String userId, ScanResult scanResult, ScanImageWriter.SavedImage saved) {
+        // Save locally; the sync worker uploads it to Firestore once online
+        Log.d("DiagnosisActivity", "Saving scan...");
+        repository.save(userId, Collections.singletonList(scanResult), new ScanHistoryRepository.SaveCallback() {
+            @Override
+            public void onSaved() {
+                Log.d("DiagnosisActivity", "Successfully saved scan");
+                recordSavedScan(userId, scanResult.getId());
+                binding.statusTextView.setText("Analysis complete - Results saved");
+                binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_green_dark, null));
+                Toast.makeText(DiagnosisActivity.this, "Scan results saved successfully", Toast.LENGTH_SHORT).show();
+
+                // Return to HistoryActivity
+                finish();
             }
 
-            // Create directory if it doesn't exist
-            File storageDir = new File(getExternalFilesDir(null), "scans");
-            if (!storageDir.exists()) {
-                if (!storageDir.mkdirs()) {
-                    throw new IOException("Failed to create storage directory");
+            @Override
+            public void onError(Exception e) {
+                Log.e("DiagnosisActivity", "Failed to save scan", e);
+                // Delete the saved image if the scan could not be stored
+                saved.image.delete();
+                if (saved.thumbnail != null) {
+                    saved.thumbnail.delete();
                 }
+                showSaveError("Failed to save results: " + e.getMessage());
             }
+        });
+    }
 
-            // Save bitmap to external storage
-            File imageFile = new File(storageDir, "scan_" + timestamp + ".jpg");
-            FileOutputStream fos = null;
-            try {
-                fos = new FileOutputStream(imageFile);
-                if (!originalBitmap.compress(Bitmap.CompressFormat.JPEG, 85, fos)) {
-                    throw new IOException("Failed to compress image");
-                }
-                fos.flush();
-            } finally {
-                if (fos != null) {
-                    try {
-                        fos.close();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                }
+    /**
+     * Remembers which scan the analysed image was saved as, so importing it again is not
+     * stored twice. Written on the background executor since it touches the disk cache.
+     */
+    private void recordSavedScan(String userId, String scanId) {
+        if (cacheKey == null) {
+            return;
+        }
+        String key = cacheKey;
+        InferenceResultCache cache = resultCache;
+        InferenceExecutor.getBackgroundInstance().submit(() -> {
+            cache.recordScan(key, userId, scanId);
+            return null;
+        }, new InferenceExecutor.Callback<Void>() {
+            @Override
+            public void onResult(Void result) {
             }
 
-            // Verify the file was created
-            if (!imageFile.exists() || imageFile.length() == 0) {
-                throw new IOException("Failed to save image file");
+            @Override
+            public void onError(Exception e) {
+                Log.w("DiagnosisActivity", "Could not record saved scan in the result cache", e);
             }
+        });
+    }
 
-            String localImagePath = imageFile.getAbsolutePath();
-            Log.d("DiagnosisActivity", "Image saved to: " + localImagePath);
-
-            // Create scan result object
-            ScanResult scanResult = new ScanResult(
-                    timestamp,
-                    localImagePath,
-                    condition,
-                    confidence,
-                    firestoreTimestamp,
-                    recommendations
-            );
-
-            // Save to Firestore
-            Log.d("DiagnosisActivity", "Saving to Firestore...");
-            db.collection("users")
-                    .document(userId)
-                    .collection("scans")
-                    .document(timestamp)
-                    .set(scanResult)
-                    .addOnSuccessListener(aVoid -> {
-                        Log.d("DiagnosisActivity", "Successfully saved to Firestore");
-                        binding.statusTextView.setText("Analysis complete - Results saved");
-                        binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_green_dark, null));
-                        Toast.makeText(this, "Scan results saved successfully", Toast.LENGTH_SHORT).show();
-
-                        // Notify HistoryActivity to refresh
-                        Intent refreshIntent = new Intent("com.example.dermalyzeapp.SCAN_SAVED");
-                        refreshIntent.setPackage(getPackageName());
-                        sendBroadcast(refreshIntent);
-                        Log.d("DiagnosisActivity", "Sent broadcast to refresh history");
-
-                        // Return to HistoryActivity
-                        finish();
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e("DiagnosisActivity", "Failed to save to Firestore", e);
-                        // Delete the saved image if Firestore save fails
-                        if (imageFile.exists()) {
-                            imageFile.delete();
-                        }
-                        
-                        String errorMessage = "Failed to save results: " + e.getMessage();
-                        binding.statusTextView.setText(errorMessage);
-                        binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
-                        Toast.makeText(this, errorMessage, Toast.LENGTH_LONG).show();
-                    });
-
-        } catch (Exception e) {
-            Log.e("DiagnosisActivity", "Error in saveResults", e);
-            String errorMessage = "Error processing image: " + e.getMessage();
-            binding.statusTextView.setText(errorMessage);
-            binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
-            Toast.makeText(this, errorMessage, Toast.LENGTH_LONG).show();
-        }
+    private void showSaveError(String errorMessage) {
+        binding.statusTextView.setText(errorMessage);
+        binding.statusTextView.setTextColor(getResources().getColor(android.R.color.holo_red_dark, null));
+        Toast.makeText(this, errorMessage, Toast.LENGTH_LONG).show();
     }
 
     private void generatePdfReport() {
-        try {
-            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
-            File pdfFile = new File(getExternalFilesDir(null), "skin_scan_" + timestamp + ".pdf");
-
-            PdfWriter writer = new PdfWriter(pdfFile);
-            PdfDocument pdf = new PdfDocument(writer);
-            Document document = new Document(pdf);
-
-            // Add title
-            document.add(new Paragraph(getString(R.string.pdf_title))
-                    .setFontSize(20)
-                    .setBold());
+        if (condition == null || reportTask != null) {
+            return;
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        File pdfFile = new File(getExternalFilesDir(null), "skin_scan_" + timestamp + ".pdf");
+        setReportInProgress(true);
+
+        Context appContext = getApplicationContext();
+        Uri imageUri = reportImageUri;
+        String reportCondition = condition;
+        double reportConfidence = confidence;
+        String reportRecommendations = recommendations;
+        reportTask = InferenceExecutor.getBackgroundInstance().submit(progress -> {
+            DiagnosisReportWriter.write(appContext, pdfFile, imageUri, reportCondition, reportConfidence,
+                    reportRecommendations, progress);
+            return pdfFile;
+        }, new InferenceExecutor.ProgressCallback<File>() {
+            @Override
+            public void onProgress(int done, int total) {
+                binding.reportProgressBar.setMax(total);
+                binding.reportProgressBar.setProgress(done);
+            }
 
-            // Add date
-            document.add(new Paragraph(getString(R.string.pdf_date_format, 
-                new SimpleDateFormat("MMMM dd, yyyy HH:mm:ss", Locale.US).format(new Date()))));
+            @Override
+            public void onResult(File result) {
+                setReportInProgress(false);
+                sharePdfReport(result);
+            }
 
-            // Add image
-            try {
-                Uri imageUri = Uri.parse(imageUriString);
-                Bitmap bitmap = BitmapFactory.decodeStream(getContentResolver().openInputStream(imageUri));
-                ByteArrayOutputStream stream = new ByteArrayOutputStream();
-                bitmap.compress(Bitmap.CompressFormat.JPEG, 100, stream);
-                Image pdfImg = new Image(ImageDataFactory.create(stream.toByteArray()));
-                pdfImg.setWidth(300);
-                document.add(pdfImg);
-            } catch (Exception e) {
-                // Handle image error
+            @Override
+            public void onError(Exception e) {
+                setReportInProgress(false);
+                Toast.makeText(DiagnosisActivity.this, getString(R.string.error_generating_pdf, e.getMessage()),
+                        Toast.LENGTH_SHORT).show();
             }
+        });
+    }
 
-            // Add diagnosis details
-            document.add(new Paragraph(getString(R.string.pdf_diagnosis_details))
-                    .setFontSize(16)
-                    .setBold());
-            document.add(new Paragraph(getString(R.string.condition_format, condition)));
-            document.add(new Paragraph(getString(R.string.confidence_format, confidence * 100)));
-
-            // Add description
-            document.add(new Paragraph(getString(R.string.pdf_condition_description))
-                    .setFontSize(16)
-                    .setBold());
-            document.add(new Paragraph(CONDITION_DESCRIPTIONS[getConditionIndex(condition)]));
-
-            // Add recommendations
-            document.add(new Paragraph(getString(R.string.pdf_recommendations))
-                    .setFontSize(16)
-                    .setBold());
-            document.add(new Paragraph(recommendations));
-
-            // Add disclaimer
-            document.add(new Paragraph(getString(R.string.pdf_disclaimer))
-                    .setFontSize(14)
-                    .setBold());
-            document.add(new Paragraph(getString(R.string.pdf_disclaimer_text))
-                    .setFontSize(10)
-                    .setItalic());
-
-            document.close();
-
-            // Share PDF
-            sharePdfReport(pdfFile);
+    private void cancelPdfReport() {
+        if (reportTask != null) {
+            // Interrupts the writer, which deletes the partial file
+            reportTask.cancel();
+            setReportInProgress(false);
+            Toast.makeText(this, R.string.pdf_cancelled, Toast.LENGTH_SHORT).show();
+        }
+    }
 
-        } catch (Exception e) {
-            Toast.makeText(this, getString(R.string.error_generating_pdf, e.getMessage()), Toast.LENGTH_SHORT).show();
+    private void setReportInProgress(boolean inProgress) {
+        if (!inProgress) {
+            reportTask = null;
         }
+        binding.generatePdfButton.setEnabled(!inProgress);
+        binding.generatePdfButton.setText(inProgress ? R.string.generating_pdf : R.string.generate_pdf);
+        binding.reportProgressBar.setProgress(0);
+        binding.reportProgressBar.setVisibility(inProgress ? View.VISIBLE : View.GONE);
+        binding.cancelReportButton.setVisibility(inProgress ? View.VISIBLE : View.GONE);
     }
 
     private void sharePdfReport(File pdfFile) {
@@ -563,8 +511,19 @@ public class DiagnosisActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (tflite != null) {
-            tflite.close();
+        if (analysisTask != null) {
+            analysisTask.cancel();
+        }
+        if (reportTask != null) {
+            reportTask.cancel();
+        }
+        if (captureId != null && isFinishing()) {
+            PendingCaptures.remove(captureId);
+        }
+        if (scanImage != null) {
+            binding.scannedImage.setImageDrawable(null);
+            scanImage.recycle();
+            scanImage = null;
         }
     }
 } 
\ No newline at end of file
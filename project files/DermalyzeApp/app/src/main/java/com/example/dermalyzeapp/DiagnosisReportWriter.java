@@ -0,0 +1,159 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Paragraph;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Writes the PDF report of a single diagnosis.
+ *
+ * Meant for a background thread. The scan is decoded straight from its file at about twice
+ * the printed size and embedded as a small JPEG, so a report costs well under a megabyte of
+ * image memory whatever the camera resolution. The PDF is compressed and streamed to disk
+ * as it is laid out. An interrupt between steps cancels the report and removes the partial
+ * file.
+ */
+public final class DiagnosisReportWriter {
+    private static final String TAG = "DiagnosisReportWriter";
+    // Printed width in points, and the pixel width embedded for it
+    private static final float IMAGE_WIDTH = 300;
+    static final int IMAGE_PIXELS = 600;
+    private static final int IMAGE_QUALITY = 85;
+    static final int PROGRESS_STEPS = 3;
+
+    private DiagnosisReportWriter() {
+    }
+
+    public static void write(Context context, File pdfFile, Uri imageUri, String condition, double confidence,
+                             String recommendations, InferenceExecutor.ProgressReporter progress) throws IOException {
+        ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.PDF_BUILD);
+        boolean written = false;
+        try {
+            byte[] image = imageUri != null ? encodeReportImage(context, imageUri) : null;
+            checkCancelled();
+            progress.report(1, PROGRESS_STEPS);
+
+            WriterProperties properties = new WriterProperties()
+                    .setCompressionLevel(CompressionConstants.BEST_COMPRESSION)
+                    .setFullCompressionMode(true);
+            PdfWriter writer = new PdfWriter(new BufferedOutputStream(new FileOutputStream(pdfFile)), properties);
+            try (Document document = new Document(new PdfDocument(writer))) {
+                addContent(context, document, image, condition, confidence, recommendations);
+                checkCancelled();
+                progress.report(2, PROGRESS_STEPS);
+            }
+            progress.report(PROGRESS_STEPS, PROGRESS_STEPS);
+            written = true;
+        } finally {
+            span.end();
+            if (!written) {
+                pdfFile.delete();
+            }
+        }
+    }
+
+    /**
+     * The scan as a JPEG about {@link #IMAGE_PIXELS} wide, or null if it cannot be read;
+     * the report is still useful without the picture.
+     */
+    private static byte[] encodeReportImage(Context context, Uri imageUri) throws InterruptedIOException {
+        Bitmap bitmap = null;
+        try {
+            bitmap = ScanImage.decodeOriented(context, imageUri, IMAGE_PIXELS);
+            checkCancelled();
+            if (bitmap.getWidth() > IMAGE_PIXELS) {
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap, IMAGE_PIXELS,
+                        Math.max(1, Math.round(bitmap.getHeight() * (float) IMAGE_PIXELS / bitmap.getWidth())), true);
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+            ByteArrayOutputStream stream = new ByteArrayOutputStream(64 * 1024);
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, IMAGE_QUALITY, stream)) {
+                throw new IOException("Failed to compress image");
+            }
+            return stream.toByteArray();
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Leaving the image out of the report", e);
+            return null;
+        } finally {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    private static void checkCancelled() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Report cancelled");
+        }
+    }
+
+    private static void addContent(Context context, Document document, byte[] image, String condition,
+                                   double confidence, String recommendations) {
+
+        // Add title
+        document.add(new Paragraph(context.getString(R.string.pdf_title))
+                .setFontSize(20)
+                .setBold());
+
+        // Add date
+        document.add(new Paragraph(context.getString(R.string.pdf_date_format,
+            new SimpleDateFormat("MMMM dd, yyyy HH:mm:ss", Locale.US).format(new Date()))));
+
+        // Add image
+        if (image != null) {
+            Image pdfImg = new Image(ImageDataFactory.create(image));
+            pdfImg.setWidth(IMAGE_WIDTH);
+            document.add(pdfImg);
+        }
+
+        // Add diagnosis details
+        document.add(new Paragraph(context.getString(R.string.pdf_diagnosis_details))
+                .setFontSize(16)
+                .setBold());
+        document.add(new Paragraph(context.getString(R.string.condition_format, condition)));
+        document.add(new Paragraph(context.getString(R.string.confidence_format, confidence * 100)));
+
+        // Add description
+        document.add(new Paragraph(context.getString(R.string.pdf_condition_description))
+                .setFontSize(16)
+                .setBold());
+        document.add(new Paragraph(SkinConditions.DESCRIPTIONS[SkinConditions.indexOf(condition)]));
+
+        // Add recommendations
+        document.add(new Paragraph(context.getString(R.string.pdf_recommendations))
+                .setFontSize(16)
+                .setBold());
+        document.add(new Paragraph(recommendations));
+
+        // Add disclaimer
+        document.add(new Paragraph(context.getString(R.string.pdf_disclaimer))
+                .setFontSize(14)
+                .setBold());
+        document.add(new Paragraph(context.getString(R.string.pdf_disclaimer_text))
+                .setFontSize(10)
+                .setItalic());
+    }
+}
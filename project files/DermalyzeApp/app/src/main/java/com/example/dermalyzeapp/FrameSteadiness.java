@@ -0,0 +1,45 @@
+package com.example.dermalyzeapp;
+
+/**
+ * Cheap camera-shake estimate for the live pre-screen, from the same downsampled pixels the
+ * classifier gets.
+ *
+ * Motion is the mean absolute luminance difference against the previous analysed frame,
+ * on a sparse grid of samples kept in a reused array.
+ */
+final class FrameSteadiness {
+    // Every STEP-th pixel in both directions
+    private static final int STEP = 4;
+
+    private final int size;
+    private final int[] previous;
+    private boolean hasPrevious;
+
+    FrameSteadiness(int size) {
+        this.size = size;
+        int samplesPerSide = (size + STEP - 1) / STEP;
+        this.previous = new int[samplesPerSide * samplesPerSide];
+    }
+
+    /**
+     * Mean absolute luminance change (0-255) since the previous frame, or 0 for the first one.
+     */
+    float update(int[] pixels) {
+        long difference = 0;
+        int index = 0;
+        for (int y = 0; y < size; y += STEP) {
+            for (int x = 0; x < size; x += STEP) {
+                int luma = ImageQualityGate.luma(pixels[y * size + x]);
+                difference += Math.abs(luma - previous[index]);
+                previous[index++] = luma;
+            }
+        }
+        boolean first = !hasPrevious;
+        hasPrevious = true;
+        return first ? 0 : (float) difference / index;
+    }
+
+    void reset() {
+        hasPrevious = false;
+    }
+}
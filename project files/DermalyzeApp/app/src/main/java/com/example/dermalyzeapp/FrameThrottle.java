@@ -0,0 +1,49 @@
+package com.example.dermalyzeapp;
+
+/**
+ * Decides which camera frames the live pre-screen analyses.
+ *
+ * Frames are taken no faster than the target rate, and further apart when inference turns
+ * out to be slow: the analysis thread is kept busy at most {@code maxDutyCycle} of the time,
+ * leaving the CPU to the preview and the UI. The cost of a frame is an exponential moving
+ * average, so one slow frame does not stall the pre-screen.
+ */
+final class FrameThrottle {
+    private final long minIntervalMillis;
+    private final float maxDutyCycle;
+    private long lastStartMillis;
+    private boolean started;
+    private double averageMillis = -1;
+
+    FrameThrottle(int targetFps, float maxDutyCycle) {
+        this.minIntervalMillis = 1000L / targetFps;
+        this.maxDutyCycle = maxDutyCycle;
+    }
+
+    /**
+     * Whether the frame arriving at {@code nowMillis} should be analysed; if so it counts as
+     * started.
+     */
+    boolean tryStart(long nowMillis) {
+        if (started && nowMillis - lastStartMillis < getIntervalMillis()) {
+            return false;
+        }
+        started = true;
+        lastStartMillis = nowMillis;
+        return true;
+    }
+
+    /**
+     * Records how long the last started frame took to analyse.
+     */
+    void finished(long durationMillis) {
+        averageMillis = averageMillis < 0 ? durationMillis : averageMillis * 0.8 + durationMillis * 0.2;
+    }
+
+    long getIntervalMillis() {
+        if (averageMillis < 0) {
+            return minIntervalMillis;
+        }
+        return Math.max(minIntervalMillis, (long) (averageMillis / maxDutyCycle));
+    }
+}
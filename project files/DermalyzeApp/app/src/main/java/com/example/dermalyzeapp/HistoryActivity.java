@@ -1,42 +1,43 @@
 package com.example.dermalyzeapp;
 
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.net.Uri;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
-import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import com.example.dermalyzeapp.databinding.ActivityHistoryBinding;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
+import java.io.File;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 public class HistoryActivity extends AppCompatActivity {
     private static final String TAG = "HistoryActivity";
     private ActivityHistoryBinding binding;
     private FirebaseAuth mAuth;
-    private FirebaseFirestore db;
+    private ScanHistoryRepository repository;
+    private ScanHistoryRepository.Subscription subscription;
     private List<ScanResult> scanResults;
     private ScanHistoryAdapter adapter;
-    private BroadcastReceiver scanSavedReceiver;
-    private boolean isLoading = false;
-    private final Handler handler = new Handler(Looper.getMainLooper());
-    private static final long REFRESH_DELAY = 500; // 500ms delay
+    private InferenceExecutor.TaskHandle exportTask;
+    // Start loading the next page this many rows before the end of the list
+    private static final int PREFETCH_DISTANCE = 5;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -51,29 +52,47 @@ public class HistoryActivity extends AppCompatActivity {
         }
 
         mAuth = FirebaseAuth.getInstance();
-        db = FirebaseFirestore.getInstance();
+        repository = LocalScanHistoryRepository.getInstance(this);
         scanResults = new ArrayList<>();
 
         setupRecyclerView();
-        setupSwipeRefresh();
-        setupBroadcastReceiver();
-        loadScanHistory();
+        // The repository keeps the list current, so there is nothing to pull
+        binding.swipeRefreshLayout.setEnabled(false);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        observeScanHistory();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (subscription != null) {
+            subscription.remove();
+            subscription = null;
+        }
     }
 
     private void setupRecyclerView() {
-        adapter = new ScanHistoryAdapter(scanResults, this::onItemClick);
+        adapter = new ScanHistoryAdapter(this::onItemClick);
 
-        binding.historyRecyclerView.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        binding.historyRecyclerView.setLayoutManager(layoutManager);
         binding.historyRecyclerView.setAdapter(adapter);
 
-        // Add scroll listener to detect when user reaches bottom
+        // Add scroll listener to fetch the next page shortly before the user reaches the bottom
         binding.historyRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
-                super.onScrollStateChanged(recyclerView, newState);
-                if (!recyclerView.canScrollVertically(1) && !isLoading) {
-                    // User has scrolled to the bottom
-                    loadMoreResults();
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                super.onScrolled(recyclerView, dx, dy);
+                if (dy > 0 && mAuth.getCurrentUser() != null
+                        && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    String userId = mAuth.getCurrentUser().getUid();
+                    if (repository.hasMore(userId)) {
+                        repository.loadMore(userId);
+                    }
                 }
             }
         });
@@ -85,90 +104,31 @@ public class HistoryActivity extends AppCompatActivity {
         });
     }
 
-    private void setupSwipeRefresh() {
-        binding.swipeRefreshLayout.setOnRefreshListener(this::refreshData);
-    }
-
-    private void refreshData() {
-        scanResults.clear();
-        adapter.notifyDataSetChanged();
-        loadScanHistory();
-    }
-
-    private void setupBroadcastReceiver() {
-        scanSavedReceiver = new BroadcastReceiver() {
-            @Override
-            public void onReceive(Context context, Intent intent) {
-                Log.d(TAG, "Received scan saved broadcast");
-                // Add delay before refreshing to allow Firebase to complete the write
-                handler.postDelayed(() -> {
-                    if (!isFinishing() && !isLoading) {
-                        refreshData();
-                    }
-                }, REFRESH_DELAY);
-            }
-        };
-        IntentFilter filter = new IntentFilter("com.example.dermalyzeapp.SCAN_SAVED");
-        if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
-            registerReceiver(scanSavedReceiver, filter, Context.RECEIVER_NOT_EXPORTED);
-        } else {
-            registerReceiver(scanSavedReceiver, filter);
-        }
-    }
-
-    private void loadScanHistory() {
-        if (isLoading) {
-            Log.d(TAG, "Already loading data, skipping request");
-            return;
-        }
-
+    private void observeScanHistory() {
         if (mAuth.getCurrentUser() == null) {
             Log.e(TAG, "User not authenticated");
             Toast.makeText(this, "Please sign in to view history", Toast.LENGTH_SHORT).show();
-            binding.swipeRefreshLayout.setRefreshing(false);
             showEmptyState("Please sign in to view history");
             return;
         }
 
-        isLoading = true;
         String userId = mAuth.getCurrentUser().getUid();
-        Log.d(TAG, "Loading scan history for user: " + userId);
-
-        db.collection("users")
-                .document(userId)
-                .collection("scans")
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .limit(20)  // Limit to 20 items per page
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    Log.d(TAG, "Successfully loaded " + queryDocumentSnapshots.size() + " scan results");
-                    scanResults.clear();
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        try {
-                            ScanResult scan = document.toObject(ScanResult.class);
-                            scan.setId(document.getId());
-                            scanResults.add(scan);
-                            Log.d(TAG, "Added scan result: " + scan.getCondition() + " with confidence: " + scan.getConfidence());
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error parsing scan result: " + document.getId(), e);
-                        }
-                    }
-                    updateUI();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error loading scan history", e);
-                    Toast.makeText(this, "Failed to load scan history: " + e.getMessage(), Toast.LENGTH_LONG).show();
-                    showEmptyState("Error loading scan history");
-                })
-                .addOnCompleteListener(task -> {
-                    isLoading = false;
-                    binding.swipeRefreshLayout.setRefreshing(false);
-                });
-    }
+        Log.d(TAG, "Observing scan history for user: " + userId);
+        subscription = repository.observe(userId, new ScanHistoryRepository.Observer() {
+            @Override
+            public void onScansChanged(List<ScanResult> scans) {
+                scanResults = scans;
+                updateUI();
+            }
 
-    private void loadMoreResults() {
-        // Implement pagination if needed
-        // This is a placeholder for future implementation
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error loading scan history", e);
+                Toast.makeText(HistoryActivity.this, "Failed to load scan history: " + e.getMessage(),
+                        Toast.LENGTH_LONG).show();
+                showEmptyState("Error loading scan history");
+            }
+        });
     }
 
     private void showEmptyState(String message) {
@@ -188,30 +148,115 @@ public class HistoryActivity extends AppCompatActivity {
 
     private void updateUI() {
         Log.d(TAG, "Updating UI with " + scanResults.size() + " items");
+        adapter.submitList(scanResults);
         if (scanResults.isEmpty()) {
             showEmptyState("No scan history available");
         } else {
             binding.emptyView.setVisibility(View.GONE);
             binding.historyRecyclerView.setVisibility(View.VISIBLE);
-            adapter.notifyDataSetChanged();
         }
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        if (!isLoading) {
-            refreshData();
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.history_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_export_pdf)
+                .setTitle(exportTask != null ? R.string.cancel_history_export : R.string.export_history_pdf);
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == R.id.action_export_pdf) {
+            if (exportTask != null) {
+                exportTask.cancel();
+                setExportInProgress(false);
+                Toast.makeText(this, R.string.history_export_cancelled, Toast.LENGTH_SHORT).show();
+            } else {
+                exportHistory();
+            }
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void exportHistory() {
+        if (mAuth.getCurrentUser() == null) {
+            Toast.makeText(this, "Please sign in to view history", Toast.LENGTH_SHORT).show();
+            return;
         }
+        String userId = mAuth.getCurrentUser().getUid();
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        File pdfFile = new File(getExternalFilesDir(null), "skin_history_" + timestamp + ".pdf");
+        setExportInProgress(true);
+
+        Context appContext = getApplicationContext();
+        exportTask = InferenceExecutor.getBackgroundInstance().submit(progress -> {
+            List<ScanResult> scans = repository.loadAll(userId);
+            if (scans.isEmpty()) {
+                return null;
+            }
+            HistoryReportWriter.write(appContext, pdfFile, scans, progress);
+            return pdfFile;
+        }, new InferenceExecutor.ProgressCallback<File>() {
+            @Override
+            public void onProgress(int done, int total) {
+                binding.exportProgressBar.setIndeterminate(false);
+                binding.exportProgressBar.setMax(total);
+                binding.exportProgressBar.setProgress(done);
+            }
+
+            @Override
+            public void onResult(File result) {
+                setExportInProgress(false);
+                if (result == null) {
+                    Toast.makeText(HistoryActivity.this, R.string.history_export_empty, Toast.LENGTH_SHORT).show();
+                } else {
+                    shareReport(result);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                setExportInProgress(false);
+                Log.e(TAG, "History export failed", e);
+                Toast.makeText(HistoryActivity.this, getString(R.string.error_generating_pdf, e.getMessage()),
+                        Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+
+    private void setExportInProgress(boolean inProgress) {
+        if (!inProgress) {
+            exportTask = null;
+        }
+        binding.exportProgressBar.setIndeterminate(true);
+        binding.exportProgressBar.setVisibility(inProgress ? View.VISIBLE : View.GONE);
+        invalidateOptionsMenu();
+    }
+
+    private void shareReport(File pdfFile) {
+        Uri pdfUri = FileProvider.getUriForFile(this,
+                getApplicationContext().getPackageName() + ".provider", pdfFile);
+
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType("application/pdf");
+        intent.putExtra(Intent.EXTRA_STREAM, pdfUri);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startActivity(Intent.createChooser(intent, getString(R.string.share_pdf)));
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (scanSavedReceiver != null) {
-            unregisterReceiver(scanSavedReceiver);
+        if (exportTask != null) {
+            exportTask.cancel();
         }
-        handler.removeCallbacksAndMessages(null);
     }
 
     @Override
@@ -223,7 +268,7 @@ public class HistoryActivity extends AppCompatActivity {
     private void onItemClick(ScanResult result) {
         // Handle item click - view detailed report
         Intent intent = new Intent(this, DiagnosisActivity.class);
-        intent.putExtra("scanResult", result);
+        intent.putExtra(DiagnosisActivity.EXTRA_SCAN_RESULT, result);
         startActivity(intent);
     }
 } 
\ No newline at end of file
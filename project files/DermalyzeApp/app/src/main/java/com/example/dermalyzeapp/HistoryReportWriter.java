@@ -0,0 +1,381 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.WriterProperties;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.AreaBreak;
+import com.itextpdf.layout.element.Cell;
+import com.itextpdf.layout.element.Image;
+import com.itextpdf.layout.element.Paragraph;
+import com.itextpdf.layout.element.Table;
+import com.itextpdf.layout.properties.UnitValue;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a user's whole scan history into one PDF: a summary, then a section per condition
+ * with its confidence trend and every scan in date order.
+ *
+ * The per-scan content (the thumbnail re-encoded for the PDF and the text cells) is prepared
+ * on a small thread pool while the document is assembled in order on the calling thread. At
+ * most {@link #WINDOW_PER_THREAD} prepared scans per worker wait to be written, and the
+ * scan tables are flushed to the file as they grow, so memory stays flat however long the
+ * history is. Call from a background thread; an interrupt cancels the export.
+ */
+public final class HistoryReportWriter {
+    private static final String TAG = "HistoryReportWriter";
+    private static final int WINDOW_PER_THREAD = 2;
+    private static final int ROWS_PER_FLUSH = 10;
+    // Rows are printed at 64 pt; 128 px keeps them sharp without growing the file
+    private static final int ROW_IMAGE_PIXELS = 128;
+    private static final float ROW_IMAGE_WIDTH = 64;
+    private static final int IMAGE_QUALITY = 80;
+    private static final int CHART_WIDTH = 1000;
+    private static final int CHART_HEIGHT = 300;
+    private static final double SECONDS_PER_MONTH = 30.44 * 24 * 3600;
+
+    private HistoryReportWriter() {
+    }
+
+    /**
+     * A scan's row, ready to be added to the document.
+     */
+    private static final class PreparedScan {
+        final ScanResult scan;
+        final Cell imageCell;
+        final Cell textCell;
+
+        PreparedScan(ScanResult scan, Cell imageCell, Cell textCell) {
+            this.scan = scan;
+            this.imageCell = imageCell;
+            this.textCell = textCell;
+        }
+    }
+
+    public static void write(Context context, File pdfFile, List<ScanResult> scans,
+                             InferenceExecutor.ProgressReporter progress) throws IOException, InterruptedException {
+        List<ScanResult> ordered = groupByCondition(scans);
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, newThreadFactory());
+        ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.PDF_BUILD);
+        boolean written = false;
+        try {
+            WriterProperties properties = new WriterProperties()
+                    .setCompressionLevel(CompressionConstants.BEST_COMPRESSION)
+                    .setFullCompressionMode(true);
+            PdfWriter writer = new PdfWriter(new BufferedOutputStream(new FileOutputStream(pdfFile)), properties);
+            try (Document document = new Document(new PdfDocument(writer))) {
+                addSummary(context, document, ordered);
+
+                ArrayDeque<Future<PreparedScan>> window = new ArrayDeque<>();
+                int next = 0;
+                Table table = null;
+                String condition = null;
+                int rowsSinceFlush = 0;
+                for (int i = 0; i < ordered.size(); i++) {
+                    // Keep the pool busy a few scans ahead of the writer, never more
+                    while (next < ordered.size() && window.size() < threads * WINDOW_PER_THREAD) {
+                        ScanResult scan = ordered.get(next++);
+                        window.add(pool.submit(() -> prepare(context, scan)));
+                    }
+                    PreparedScan prepared = await(window.poll());
+
+                    if (table == null || !Objects.equals(prepared.scan.getCondition(), condition)) {
+                        if (table != null) {
+                            table.complete();
+                        }
+                        condition = prepared.scan.getCondition();
+                        addConditionHeader(context, document, condition, scansOf(ordered, condition));
+                        table = new Table(UnitValue.createPercentArray(new float[]{1, 4}), true)
+                                .useAllAvailableWidth();
+                        document.add(table);
+                        rowsSinceFlush = 0;
+                    }
+                    table.addCell(prepared.imageCell);
+                    table.addCell(prepared.textCell);
+                    if (++rowsSinceFlush == ROWS_PER_FLUSH) {
+                        table.flush();
+                        rowsSinceFlush = 0;
+                    }
+                    progress.report(i + 1, ordered.size());
+                }
+                if (table != null) {
+                    table.complete();
+                }
+            }
+            written = true;
+        } finally {
+            span.end();
+            pool.shutdownNow();
+            if (!written) {
+                pdfFile.delete();
+            }
+        }
+    }
+
+    private static ThreadFactory newThreadFactory() {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "dermalyze-report-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static PreparedScan await(Future<PreparedScan> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to prepare scan", e.getCause());
+        }
+    }
+
+    /**
+     * Orders scans by condition (in {@link SkinConditions#NAMES} order, unknown ones last) and
+     * by time within each condition.
+     */
+    static List<ScanResult> groupByCondition(List<ScanResult> scans) {
+        List<ScanResult> ordered = new ArrayList<>(scans);
+        ordered.sort((a, b) -> {
+            int byCondition = Integer.compare(conditionRank(a.getConditionIndex()), conditionRank(b.getConditionIndex()));
+            if (byCondition != 0) {
+                return byCondition;
+            }
+            int byName = String.valueOf(a.getCondition()).compareTo(String.valueOf(b.getCondition()));
+            if (byName != 0) {
+                return byName;
+            }
+            return Long.compare(epochSeconds(a), epochSeconds(b));
+        });
+        return ordered;
+    }
+
+    private static int conditionRank(int conditionIndex) {
+        // Unknown conditions go after the known ones
+        return conditionIndex >= 0 ? conditionIndex : SkinConditions.NAMES.length;
+    }
+
+    private static long epochSeconds(ScanResult scan) {
+        return scan.getTimestamp() != null ? scan.getTimestamp().getSeconds() : 0;
+    }
+
+    private static List<ScanResult> scansOf(List<ScanResult> ordered, String condition) {
+        List<ScanResult> matching = new ArrayList<>();
+        for (ScanResult scan : ordered) {
+            if (Objects.equals(condition, scan.getCondition())) {
+                matching.add(scan);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Least-squares slope of confidence over time, in percentage points per month. Zero
+     * when there are fewer than two scans or they were all taken at the same moment.
+     */
+    static double confidenceTrendPerMonth(List<ScanResult> scans) {
+        int n = scans.size();
+        if (n < 2) {
+            return 0;
+        }
+        double meanX = 0;
+        double meanY = 0;
+        for (ScanResult scan : scans) {
+            meanX += epochSeconds(scan) / SECONDS_PER_MONTH;
+            meanY += scan.getConfidence() * 100;
+        }
+        meanX /= n;
+        meanY /= n;
+        double covariance = 0;
+        double variance = 0;
+        for (ScanResult scan : scans) {
+            double dx = epochSeconds(scan) / SECONDS_PER_MONTH - meanX;
+            covariance += dx * (scan.getConfidence() * 100 - meanY);
+            variance += dx * dx;
+        }
+        return variance > 0 ? covariance / variance : 0;
+    }
+
+    static double averageConfidence(List<ScanResult> scans) {
+        double sum = 0;
+        for (ScanResult scan : scans) {
+            sum += scan.getConfidence();
+        }
+        return scans.isEmpty() ? 0 : sum / scans.size();
+    }
+
+    private static void addSummary(Context context, Document document, List<ScanResult> ordered) {
+        document.add(new Paragraph(context.getString(R.string.history_report_title))
+                .setFontSize(20)
+                .setBold());
+        document.add(new Paragraph(context.getString(R.string.pdf_date_format,
+                new SimpleDateFormat("MMMM dd, yyyy HH:mm:ss", Locale.US).format(new Date()))));
+
+        long first = Long.MAX_VALUE;
+        long last = Long.MIN_VALUE;
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (ScanResult scan : ordered) {
+            first = Math.min(first, epochSeconds(scan));
+            last = Math.max(last, epochSeconds(scan));
+            counts.merge(scan.getCondition(), 1, Integer::sum);
+        }
+        if (!ordered.isEmpty()) {
+            SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy", Locale.US);
+            document.add(new Paragraph(context.getString(R.string.history_report_summary, ordered.size(),
+                    dateFormat.format(new Date(first * 1000)), dateFormat.format(new Date(last * 1000)))));
+        }
+
+        Table table = new Table(UnitValue.createPercentArray(new float[]{3, 1})).useAllAvailableWidth();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            table.addCell(new Cell().add(new Paragraph(String.valueOf(entry.getKey()))));
+            table.addCell(new Cell().add(new Paragraph(String.valueOf(entry.getValue()))));
+        }
+        document.add(table);
+
+        document.add(new Paragraph(context.getString(R.string.pdf_disclaimer_text))
+                .setFontSize(10)
+                .setItalic());
+    }
+
+    private static void addConditionHeader(Context context, Document document, String condition,
+                                           List<ScanResult> scans) {
+        document.add(new AreaBreak());
+        document.add(new Paragraph(String.valueOf(condition))
+                .setFontSize(18)
+                .setBold());
+        int index = SkinConditions.find(condition);
+        if (index >= 0) {
+            document.add(new Paragraph(SkinConditions.DESCRIPTIONS[index]));
+        }
+        document.add(new Paragraph(context.getString(R.string.history_report_condition_summary,
+                scans.size(), averageConfidence(scans) * 100, confidenceTrendPerMonth(scans))));
+        if (scans.size() > 1) {
+            byte[] chart = renderTrendChart(scans);
+            if (chart != null) {
+                document.add(new Image(ImageDataFactory.create(chart)).setAutoScale(true));
+            }
+        }
+    }
+
+    /**
+     * Confidence over time as a PNG line chart, or null if it could not be drawn.
+     */
+    private static byte[] renderTrendChart(List<ScanResult> scans) {
+        Bitmap chart = Bitmap.createBitmap(CHART_WIDTH, CHART_HEIGHT, Bitmap.Config.ARGB_8888);
+        try {
+            Canvas canvas = new Canvas(chart);
+            canvas.drawColor(Color.WHITE);
+            float margin = 20;
+            float width = CHART_WIDTH - 2 * margin;
+            float height = CHART_HEIGHT - 2 * margin;
+
+            Paint axis = new Paint(Paint.ANTI_ALIAS_FLAG);
+            axis.setColor(Color.GRAY);
+            axis.setStrokeWidth(2);
+            canvas.drawLine(margin, margin, margin, margin + height, axis);
+            canvas.drawLine(margin, margin + height, margin + width, margin + height, axis);
+
+            long first = epochSeconds(scans.get(0));
+            long span = Math.max(1, epochSeconds(scans.get(scans.size() - 1)) - first);
+            Path line = new Path();
+            Paint point = new Paint(Paint.ANTI_ALIAS_FLAG);
+            point.setColor(Color.rgb(33, 150, 243));
+            for (int i = 0; i < scans.size(); i++) {
+                ScanResult scan = scans.get(i);
+                float x = margin + width * (epochSeconds(scan) - first) / span;
+                float y = margin + height * (1 - (float) scan.getConfidence());
+                if (i == 0) {
+                    line.moveTo(x, y);
+                } else {
+                    line.lineTo(x, y);
+                }
+                canvas.drawCircle(x, y, 5, point);
+            }
+            Paint stroke = new Paint(point);
+            stroke.setStyle(Paint.Style.STROKE);
+            stroke.setStrokeWidth(3);
+            canvas.drawPath(line, stroke);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            return chart.compress(Bitmap.CompressFormat.PNG, 100, out) ? out.toByteArray() : null;
+        } finally {
+            chart.recycle();
+        }
+    }
+
+    /**
+     * Builds one scan's row. Runs on the pool.
+     */
+    private static PreparedScan prepare(Context context, ScanResult scan) {
+        Cell imageCell = new Cell();
+        byte[] image = encodeRowImage(context, scan);
+        if (image != null) {
+            imageCell.add(new Image(ImageDataFactory.create(image)).setWidth(ROW_IMAGE_WIDTH));
+        }
+        Cell textCell = new Cell()
+                .add(new Paragraph(scan.dateLabel(ScanHistoryAdapter.DATE_FORMAT)).setBold())
+                .add(new Paragraph(scan.confidenceLabel()));
+        return new PreparedScan(scan, imageCell, textCell);
+    }
+
+    /**
+     * The scan's thumbnail, or its full image sampled down, as a small JPEG; null if neither
+     * can be read.
+     */
+    private static byte[] encodeRowImage(Context context, ScanResult scan) {
+        String path = scan.getThumbnailPath() != null && new File(scan.getThumbnailPath()).exists()
+                ? scan.getThumbnailPath()
+                : scan.getImageUrl();
+        if (path == null) {
+            return null;
+        }
+        Bitmap bitmap = null;
+        try {
+            bitmap = ScanImage.decodeOriented(context, Uri.fromFile(new File(path)), ROW_IMAGE_PIXELS);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+            return bitmap.compress(Bitmap.CompressFormat.JPEG, IMAGE_QUALITY, out) ? out.toByteArray() : null;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "No image for scan " + scan.getId(), e);
+            return null;
+        } finally {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.dermalyzeapp;
 
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
@@ -14,18 +15,21 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 
 import com.example.dermalyzeapp.databinding.ActivityHomeBinding;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
+import java.io.File;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 public class HomeActivity extends AppCompatActivity {
     private static final String TAG = "HomeActivity";
     private ActivityHomeBinding binding;
     private FirebaseAuth mAuth;
-    private FirebaseFirestore db;
+    private static final int RECENT_SCAN_COUNT = 5;
+    private ScanHistoryRepository repository;
+    private ScanHistoryRepository.Subscription subscription;
     private List<ScanResult> recentScans;
     private ScanHistoryAdapter adapter;
 
@@ -37,18 +41,17 @@ public class HomeActivity extends AppCompatActivity {
 
         setSupportActionBar(binding.toolbar);
         mAuth = FirebaseAuth.getInstance();
-        db = FirebaseFirestore.getInstance();
+        repository = LocalScanHistoryRepository.getInstance(this);
         recentScans = new ArrayList<>();
 
         setupRecyclerView();
         setupButtons();
-        loadRecentScans();
     }
 
     private void setupRecyclerView() {
-        adapter = new ScanHistoryAdapter(recentScans, result -> {
+        adapter = new ScanHistoryAdapter(result -> {
             Intent intent = new Intent(this, DiagnosisActivity.class);
-            intent.putExtra("scanResult", result);
+            intent.putExtra(DiagnosisActivity.EXTRA_SCAN_RESULT, result);
             startActivity(intent);
         });
         binding.recentScansRecyclerView.setLayoutManager(new LinearLayoutManager(this));
@@ -65,12 +68,21 @@ public class HomeActivity extends AppCompatActivity {
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        loadRecentScans();
+    protected void onStart() {
+        super.onStart();
+        observeRecentScans();
     }
 
-    private void loadRecentScans() {
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (subscription != null) {
+            subscription.remove();
+            subscription = null;
+        }
+    }
+
+    private void observeRecentScans() {
         if (mAuth.getCurrentUser() == null) {
             Log.e(TAG, "User not authenticated");
             Toast.makeText(this, "Please sign in to view scans", Toast.LENGTH_SHORT).show();
@@ -78,43 +90,30 @@ public class HomeActivity extends AppCompatActivity {
         }
 
         String userId = mAuth.getCurrentUser().getUid();
-        Log.d(TAG, "Loading recent scans for user: " + userId);
-
-        db.collection("users")
-                .document(userId)
-                .collection("scans")
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .limit(5)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    Log.d(TAG, "Successfully loaded " + queryDocumentSnapshots.size() + " recent scans");
-                    recentScans.clear();
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        try {
-                            ScanResult scan = document.toObject(ScanResult.class);
-                            scan.setId(document.getId());
-                            recentScans.add(scan);
-                            Log.d(TAG, "Added recent scan: " + scan.getCondition());
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error parsing scan result", e);
-                        }
-                    }
-                    updateUI();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error loading recent scans", e);
-                    Toast.makeText(this, "Failed to load recent scans", Toast.LENGTH_SHORT).show();
-                });
+        Log.d(TAG, "Observing recent scans for user: " + userId);
+        subscription = repository.observe(userId, new ScanHistoryRepository.Observer() {
+            @Override
+            public void onScansChanged(List<ScanResult> scans) {
+                recentScans = new ArrayList<>(scans.subList(0, Math.min(RECENT_SCAN_COUNT, scans.size())));
+                updateUI();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error loading recent scans", e);
+                Toast.makeText(HomeActivity.this, "Failed to load recent scans", Toast.LENGTH_SHORT).show();
+            }
+        });
     }
 
     private void updateUI() {
+        adapter.submitList(recentScans);
         if (recentScans.isEmpty()) {
             binding.noScansText.setVisibility(View.VISIBLE);
             binding.recentScansRecyclerView.setVisibility(View.GONE);
         } else {
             binding.noScansText.setVisibility(View.GONE);
             binding.recentScansRecyclerView.setVisibility(View.VISIBLE);
-            adapter.notifyDataSetChanged();
         }
     }
 
@@ -135,8 +134,12 @@ public class HomeActivity extends AppCompatActivity {
             Intent intent = new Intent(this, HistoryActivity.class);
             startActivity(intent);
             return true;
+        } else if (item.getItemId() == R.id.action_export_metrics) {
+            exportMetrics();
+            return true;
         } else if (item.getItemId() == R.id.action_logout) {
             mAuth.signOut();
+            repository.clear();
             Intent intent = new Intent(this, LoginActivity.class);
             intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
             startActivity(intent);
@@ -145,4 +148,31 @@ public class HomeActivity extends AppCompatActivity {
         }
         return super.onOptionsItemSelected(item);
     }
+
+    /**
+     * Dumps the scan pipeline metrics to the app's external files, where they can be pulled
+     * with adb.
+     */
+    private void exportMetrics() {
+        Context appContext = getApplicationContext();
+        File file = new File(getExternalFilesDir("metrics"), "scan_metrics_"
+                + new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date()) + ".json");
+        InferenceExecutor.getBackgroundInstance().submit(() -> {
+            ScanMetrics.writeJson(appContext, file);
+            return file;
+        }, new InferenceExecutor.Callback<File>() {
+            @Override
+            public void onResult(File result) {
+                Toast.makeText(HomeActivity.this, getString(R.string.scan_metrics_exported, result.getAbsolutePath()),
+                        Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Failed to export scan metrics", e);
+                Toast.makeText(HomeActivity.this, "Failed to export metrics: " + e.getMessage(),
+                        Toast.LENGTH_LONG).show();
+            }
+        });
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,226 @@
+package com.example.dermalyzeapp;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Turns a bitmap into the model's input without allocating on the steady path.
+ *
+ * Each pooled interpreter owns one of these. The direct input buffer, the pixel array, the
+ * scratch bitmap used for resizing and the output buffer are all created up front and reused
+ * for every scan. Float models get pixels scaled to [0,1]; quantized models get the same
+ * values mapped through the input tensor's scale and zero point, and their output is
+ * dequantized back to probabilities. Not thread-safe; the engine hands it out together with
+ * its interpreter.
+ */
+final class ImagePreprocessor {
+    private static final int IMAGE_SIZE = SkinClassifierEngine.IMAGE_SIZE;
+    private static final int PIXEL_COUNT = IMAGE_SIZE * IMAGE_SIZE;
+    private static final float PIXEL_SCALE = 255f;
+
+    private final int bytesPerImage;
+    private final int numClasses;
+    private final ByteBuffer inputBuffer;
+    private final FloatBuffer inputFloats;
+    private final byte[] quantizationTable;
+    private final int[] pixels = new int[PIXEL_COUNT];
+
+    private final Object output;
+    private final float[][] floatOutput;
+    private final ByteBuffer quantizedOutput;
+    private final float outputScale;
+    private final int outputZeroPoint;
+    private final boolean outputSigned;
+
+    private final Bitmap resizedBitmap;
+    private final Canvas resizeCanvas;
+    private final Rect resizeBounds = new Rect(0, 0, IMAGE_SIZE, IMAGE_SIZE);
+    private final Paint resizePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    ImagePreprocessor(Tensor inputTensor, Tensor outputTensor) {
+        DataType inputType = inputTensor.dataType();
+        if (isQuantized(inputType)) {
+            Tensor.QuantizationParams params = inputTensor.quantizationParams();
+            bytesPerImage = PIXEL_COUNT * 3;
+            inputBuffer = ByteBuffer.allocateDirect(bytesPerImage).order(ByteOrder.nativeOrder());
+            inputFloats = null;
+            quantizationTable = buildQuantizationTable(params.getScale(), params.getZeroPoint(),
+                    inputType == DataType.INT8);
+        } else {
+            bytesPerImage = PIXEL_COUNT * 3 * 4;
+            inputBuffer = ByteBuffer.allocateDirect(bytesPerImage).order(ByteOrder.nativeOrder());
+            inputFloats = inputBuffer.asFloatBuffer();
+            quantizationTable = null;
+        }
+
+        numClasses = outputTensor.shape()[1];
+        DataType outputType = outputTensor.dataType();
+        if (isQuantized(outputType)) {
+            Tensor.QuantizationParams params = outputTensor.quantizationParams();
+            quantizedOutput = ByteBuffer.allocateDirect(numClasses).order(ByteOrder.nativeOrder());
+            floatOutput = null;
+            output = quantizedOutput;
+            outputScale = params.getScale();
+            outputZeroPoint = params.getZeroPoint();
+            outputSigned = outputType == DataType.INT8;
+        } else {
+            floatOutput = new float[1][numClasses];
+            quantizedOutput = null;
+            output = floatOutput;
+            outputScale = 1f;
+            outputZeroPoint = 0;
+            outputSigned = false;
+        }
+
+        resizedBitmap = Bitmap.createBitmap(IMAGE_SIZE, IMAGE_SIZE, Bitmap.Config.ARGB_8888);
+        resizeCanvas = new Canvas(resizedBitmap);
+        resizePaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+
+    private static boolean isQuantized(DataType type) {
+        return type == DataType.UINT8 || type == DataType.INT8;
+    }
+
+    /**
+     * Resizes (bilinear) and normalizes {@code bitmap} into the shared input buffer.
+     */
+    ByteBuffer process(Bitmap bitmap) {
+        loadPixels(bitmap);
+        if (quantizationTable != null) {
+            inputBuffer.rewind();
+            fillQuantizedInputBuffer(pixels, PIXEL_COUNT, quantizationTable, inputBuffer);
+        } else {
+            inputFloats.rewind();
+            fillInputBuffer(pixels, PIXEL_COUNT, inputFloats);
+        }
+        inputBuffer.rewind();
+        return inputBuffer;
+    }
+
+    /**
+     * Writes one image at the current position of a batched input buffer and advances it.
+     */
+    void processInto(Bitmap bitmap, ByteBuffer batchInput) {
+        loadPixels(bitmap);
+        if (quantizationTable != null) {
+            fillQuantizedInputBuffer(pixels, PIXEL_COUNT, quantizationTable, batchInput);
+        } else {
+            fillInputBuffer(pixels, PIXEL_COUNT, batchInput.asFloatBuffer());
+            batchInput.position(batchInput.position() + bytesPerImage);
+        }
+    }
+
+    private void loadPixels(Bitmap bitmap) {
+        Bitmap source = bitmap;
+        if (bitmap.getWidth() != IMAGE_SIZE || bitmap.getHeight() != IMAGE_SIZE) {
+            resizeCanvas.drawBitmap(bitmap, null, resizeBounds, resizePaint);
+            source = resizedBitmap;
+        }
+        source.getPixels(pixels, 0, IMAGE_SIZE, 0, 0, IMAGE_SIZE, IMAGE_SIZE);
+    }
+
+    ByteBuffer getInputBuffer() {
+        inputBuffer.rewind();
+        return inputBuffer;
+    }
+
+    int getInputBytesPerImage() {
+        return bytesPerImage;
+    }
+
+    /**
+     * The object to pass as the interpreter's output; read it back with {@link #readOutput}.
+     */
+    Object getOutput() {
+        if (quantizedOutput != null) {
+            quantizedOutput.rewind();
+        }
+        return output;
+    }
+
+    void readOutput(float[] probabilities) {
+        if (floatOutput != null) {
+            System.arraycopy(floatOutput[0], 0, probabilities, 0, numClasses);
+        } else {
+            dequantize(quantizedOutput, 0, probabilities);
+        }
+    }
+
+    /**
+     * Output holder for a {@code [batchSize, numClasses]} run; read it with {@link #readBatchOutput}.
+     */
+    Object createBatchOutput(int batchSize) {
+        if (floatOutput != null) {
+            return new float[batchSize][numClasses];
+        }
+        return ByteBuffer.allocateDirect(batchSize * numClasses).order(ByteOrder.nativeOrder());
+    }
+
+    void readBatchOutput(Object batchOutput, int index, float[] probabilities) {
+        if (batchOutput instanceof float[][]) {
+            System.arraycopy(((float[][]) batchOutput)[index], 0, probabilities, 0, numClasses);
+        } else {
+            dequantize((ByteBuffer) batchOutput, index * numClasses, probabilities);
+        }
+    }
+
+    private void dequantize(ByteBuffer quantized, int offset, float[] probabilities) {
+        for (int i = 0; i < numClasses; i++) {
+            byte value = quantized.get(offset + i);
+            int level = outputSigned ? value : value & 0xFF;
+            probabilities[i] = (level - outputZeroPoint) * outputScale;
+        }
+    }
+
+    /**
+     * Writes the RGB channels of {@code count} ARGB pixels scaled to [0,1], matching
+     * {@code NormalizeOp(0f, 255f)} on a {@code TensorImage}.
+     */
+    static void fillInputBuffer(int[] pixels, int count, FloatBuffer out) {
+        for (int i = 0; i < count; i++) {
+            int pixel = pixels[i];
+            out.put(((pixel >> 16) & 0xFF) / PIXEL_SCALE);
+            out.put(((pixel >> 8) & 0xFF) / PIXEL_SCALE);
+            out.put((pixel & 0xFF) / PIXEL_SCALE);
+        }
+    }
+
+    /**
+     * Same as {@link #fillInputBuffer} for a quantized input, using a table built by
+     * {@link #buildQuantizationTable}.
+     */
+    static void fillQuantizedInputBuffer(int[] pixels, int count, byte[] table, ByteBuffer out) {
+        for (int i = 0; i < count; i++) {
+            int pixel = pixels[i];
+            out.put(table[(pixel >> 16) & 0xFF]);
+            out.put(table[(pixel >> 8) & 0xFF]);
+            out.put(table[pixel & 0xFF]);
+        }
+    }
+
+    /**
+     * Maps every 8-bit channel value to the quantized representation of {@code value / 255}
+     * for a tensor with the given scale and zero point.
+     */
+    static byte[] buildQuantizationTable(float scale, int zeroPoint, boolean signed) {
+        int min = signed ? Byte.MIN_VALUE : 0;
+        int max = signed ? Byte.MAX_VALUE : 255;
+        byte[] table = new byte[256];
+        for (int value = 0; value < 256; value++) {
+            int quantized = Math.round((value / PIXEL_SCALE) / scale) + zeroPoint;
+            table[value] = (byte) Math.max(min, Math.min(max, quantized));
+        }
+        return table;
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Rejects or flags photos that are not worth classifying, before inference runs.
+ *
+ * Works on the downsampled model input as ARGB {@code int[]} pixels: sharpness is the
+ * variance of the Laplacian of the luminance, exposure comes from the luminance histogram,
+ * and framing from the centre of mass of the pixels clearly darker than the rest, where a
+ * lesion usually is. The luminance plane and the histogram are kept between calls, so checking does
+ * not allocate per pixel. Not thread-safe; use one gate per thread.
+ */
+final class ImageQualityGate {
+    // Laplacian variance below which a photo is rejected, and below which it only gets a warning
+    static final float REJECT_SHARPNESS = 20f;
+    static final float WARN_SHARPNESS = 60f;
+    static final int DARK_LEVEL = 20;
+    static final int BRIGHT_LEVEL = 235;
+    // Share of clipped pixels above which a photo is rejected as under- or overexposed
+    static final float MAX_CLIPPED_FRACTION = 0.5f;
+    static final float MIN_MEAN_LUMA = 45f;
+    static final float MAX_MEAN_LUMA = 215f;
+    // Distance of the lesion's centre from the image centre, as a fraction of the shorter side
+    static final float MAX_CENTER_OFFSET = 0.25f;
+    // Pixels count towards the lesion when at least this far, or one standard deviation, below the mean
+    private static final int MIN_LESION_CONTRAST = 15;
+
+    enum Issue {
+        BLURRY,
+        UNDEREXPOSED,
+        OVEREXPOSED,
+        OFF_CENTER
+    }
+
+    enum Verdict {
+        OK,
+        WARN,
+        REJECT
+    }
+
+    static final class Report {
+        final Verdict verdict;
+        final Set<Issue> issues;
+        final float sharpness;
+        final float meanLuma;
+        final float darkFraction;
+        final float brightFraction;
+        final float centerOffset;
+
+        Report(Verdict verdict, Set<Issue> issues, float sharpness, float meanLuma, float darkFraction,
+               float brightFraction, float centerOffset) {
+            this.verdict = verdict;
+            this.issues = issues;
+            this.sharpness = sharpness;
+            this.meanLuma = meanLuma;
+            this.darkFraction = darkFraction;
+            this.brightFraction = brightFraction;
+            this.centerOffset = centerOffset;
+        }
+    }
+
+    private final int[] histogram = new int[256];
+    private int[] pixels = new int[0];
+    private int[] luma = new int[0];
+
+    /**
+     * The issues as a short phrase for the user, e.g. "too blurry, too dark".
+     */
+    static String describe(Context context, Set<Issue> issues) {
+        StringBuilder description = new StringBuilder();
+        for (Issue issue : issues) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            switch (issue) {
+                case BLURRY:
+                    description.append(context.getString(R.string.quality_blurry));
+                    break;
+                case UNDEREXPOSED:
+                    description.append(context.getString(R.string.quality_underexposed));
+                    break;
+                case OVEREXPOSED:
+                    description.append(context.getString(R.string.quality_overexposed));
+                    break;
+                case OFF_CENTER:
+                    description.append(context.getString(R.string.quality_off_center));
+                    break;
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * Checks a decoded scan, recorded as the {@link ScanMetrics.Stage#QUALITY_GATE} stage.
+     */
+    Report check(Bitmap bitmap) {
+        ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.QUALITY_GATE);
+        try {
+            int width = bitmap.getWidth();
+            int height = bitmap.getHeight();
+            if (pixels.length < width * height) {
+                pixels = new int[width * height];
+            }
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+            return check(pixels, width, height);
+        } finally {
+            span.end();
+        }
+    }
+
+    Report check(int[] argb, int width, int height) {
+        int count = width * height;
+        if (luma.length < count) {
+            luma = new int[count];
+        }
+        long sum = 0;
+        Arrays.fill(histogram, 0);
+        for (int i = 0; i < count; i++) {
+            int value = luma(argb[i]);
+            luma[i] = value;
+            histogram[value]++;
+            sum += value;
+        }
+        float meanLuma = count == 0 ? 0 : (float) sum / count;
+
+        float sharpness = laplacianVariance(luma, width, height);
+        float darkFraction = fractionAtOrBelow(histogram, DARK_LEVEL, count);
+        float brightFraction = 1f - fractionAtOrBelow(histogram, BRIGHT_LEVEL - 1, count);
+        int lesionThreshold = (int) (meanLuma - Math.max(MIN_LESION_CONTRAST, standardDeviation(histogram, meanLuma, count)));
+        float centerOffset = darkCenterOffset(luma, width, height, lesionThreshold);
+
+        EnumSet<Issue> issues = EnumSet.noneOf(Issue.class);
+        Verdict verdict = Verdict.OK;
+        if (sharpness < WARN_SHARPNESS) {
+            issues.add(Issue.BLURRY);
+            verdict = sharpness < REJECT_SHARPNESS ? Verdict.REJECT : Verdict.WARN;
+        }
+        if (meanLuma < MIN_MEAN_LUMA || darkFraction > MAX_CLIPPED_FRACTION) {
+            issues.add(Issue.UNDEREXPOSED);
+            verdict = Verdict.REJECT;
+        } else if (meanLuma > MAX_MEAN_LUMA || brightFraction > MAX_CLIPPED_FRACTION) {
+            issues.add(Issue.OVEREXPOSED);
+            verdict = Verdict.REJECT;
+        }
+        if (centerOffset > MAX_CENTER_OFFSET) {
+            issues.add(Issue.OFF_CENTER);
+            if (verdict == Verdict.OK) {
+                verdict = Verdict.WARN;
+            }
+        }
+        return new Report(verdict, issues, sharpness, meanLuma, darkFraction, brightFraction, centerOffset);
+    }
+
+    /**
+     * BT.601 luminance of an ARGB pixel, in 8-bit fixed point.
+     */
+    static int luma(int argb) {
+        return (((argb >> 16) & 0xFF) * 77 + ((argb >> 8) & 0xFF) * 150 + (argb & 0xFF) * 29) >> 8;
+    }
+
+    /**
+     * Variance of the 4-neighbour Laplacian over the interior pixels; low for blurry images.
+     */
+    static float laplacianVariance(int[] luma, int width, int height) {
+        if (width < 3 || height < 3) {
+            return 0;
+        }
+        long sum = 0;
+        long sumOfSquares = 0;
+        for (int y = 1; y < height - 1; y++) {
+            int row = y * width;
+            for (int x = 1; x < width - 1; x++) {
+                int i = row + x;
+                int laplacian = luma[i - 1] + luma[i + 1] + luma[i - width] + luma[i + width] - 4 * luma[i];
+                sum += laplacian;
+                sumOfSquares += (long) laplacian * laplacian;
+            }
+        }
+        long n = (long) (width - 2) * (height - 2);
+        double mean = (double) sum / n;
+        return (float) ((double) sumOfSquares / n - mean * mean);
+    }
+
+    private static float standardDeviation(int[] histogram, float mean, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            double difference = i - mean;
+            sum += difference * difference * histogram[i];
+        }
+        return (float) Math.sqrt(sum / count);
+    }
+
+    private static float fractionAtOrBelow(int[] histogram, int level, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        int below = 0;
+        for (int i = 0; i <= level; i++) {
+            below += histogram[i];
+        }
+        return (float) below / count;
+    }
+
+    /**
+     * Distance between the image centre and the centre of mass of the pixels darker than
+     * {@code threshold}, weighted by how much darker they are, relative to the shorter side.
+     * Zero when nothing stands out.
+     */
+    static float darkCenterOffset(int[] luma, int width, int height, int threshold) {
+        long weight = 0;
+        long weightedX = 0;
+        long weightedY = 0;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int darkness = threshold - luma[row + x];
+                if (darkness > 0) {
+                    weight += darkness;
+                    weightedX += (long) darkness * x;
+                    weightedY += (long) darkness * y;
+                }
+            }
+        }
+        if (weight == 0) {
+            return 0;
+        }
+        double dx = (double) weightedX / weight - (width - 1) / 2.0;
+        double dy = (double) weightedY / weight - (height - 1) / 2.0;
+        return (float) (Math.sqrt(dx * dx + dy * dy) / Math.min(width, height));
+    }
+}
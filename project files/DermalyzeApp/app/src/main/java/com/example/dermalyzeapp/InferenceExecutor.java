@@ -0,0 +1,165 @@
+package com.example.dermalyzeapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Background executors that post their results back to the main thread.
+ *
+ * {@link #getInstance()} is bounded and reserved for the short decode-and-classify work of an
+ * interactive diagnosis, so it is never stuck behind a long job.
+ * {@link #getBackgroundInstance()} takes everything that can run for a while or mostly waits
+ * on storage: batch imports, PDF reports, history exports, model preloading and cache
+ * bookkeeping. Screens keep the returned {@link TaskHandle} and cancel it when they are
+ * destroyed, so a late result is never delivered to a dead Activity.
+ */
+public final class InferenceExecutor {
+    private static final String TAG = "InferenceExecutor";
+    private static final int THREAD_COUNT = 2;
+    private static final int MAX_QUEUED_TASKS = 4;
+
+    private static final InferenceExecutor INSTANCE = new InferenceExecutor("dermalyze-inference",
+            new ArrayBlockingQueue<>(MAX_QUEUED_TASKS));
+    // Unbounded: these jobs are started by the user one at a time and must not be rejected
+    private static final InferenceExecutor BACKGROUND = new InferenceExecutor("dermalyze-background",
+            new LinkedBlockingQueue<>());
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface Task<T> {
+        T run() throws Exception;
+    }
+
+    public interface Callback<T> {
+        void onResult(T result);
+
+        void onError(Exception e);
+
+        /**
+         * Gets a result that was produced after the task was cancelled, on the main thread, so
+         * anything it holds can be released. Does nothing by default.
+         */
+        default void onDiscarded(T result) {
+        }
+    }
+
+    public interface ProgressReporter {
+        void report(int done, int total);
+    }
+
+    /**
+     * A task that reports progress while it runs, e.g. per image of a batch.
+     */
+    public interface ProgressTask<T> {
+        T run(ProgressReporter progress) throws Exception;
+    }
+
+    public interface ProgressCallback<T> extends Callback<T> {
+        void onProgress(int done, int total);
+    }
+
+    public static final class TaskHandle {
+        private volatile boolean cancelled = false;
+        private Future<?> future;
+
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private InferenceExecutor(String name, BlockingQueue<Runnable> queue) {
+        this.name = name;
+        AtomicInteger threadCount = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 30, TimeUnit.SECONDS, queue, threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static InferenceExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    public static InferenceExecutor getBackgroundInstance() {
+        return BACKGROUND;
+    }
+
+    public <T> TaskHandle submit(Task<T> task, Callback<T> callback) {
+        return enqueue(progress -> task.run(), callback);
+    }
+
+    public <T> TaskHandle submit(ProgressTask<T> task, ProgressCallback<T> callback) {
+        return enqueue(task, callback);
+    }
+
+    private <T> TaskHandle enqueue(ProgressTask<T> task, Callback<T> callback) {
+        TaskHandle handle = new TaskHandle();
+        ProgressReporter reporter = (done, total) -> {
+            if (callback instanceof ProgressCallback) {
+                mainHandler.post(() -> {
+                    if (!handle.isCancelled()) {
+                        ((ProgressCallback<T>) callback).onProgress(done, total);
+                    }
+                });
+            }
+        };
+        try {
+            handle.future = executor.submit(() -> {
+                if (handle.isCancelled()) {
+                    return;
+                }
+                try {
+                    T result = task.run(reporter);
+                    mainHandler.post(() -> {
+                        if (!handle.isCancelled()) {
+                            callback.onResult(result);
+                        } else {
+                            callback.onDiscarded(result);
+                        }
+                    });
+                } catch (Exception e) {
+                    if (handle.isCancelled()) {
+                        return;
+                    }
+                    Log.e(TAG, "Task failed on " + name, e);
+                    mainHandler.post(() -> {
+                        if (!handle.isCancelled()) {
+                            callback.onError(e);
+                        }
+                    });
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG, "Queue of " + name + " is full", e);
+            mainHandler.post(() -> callback.onError(e));
+        }
+        return handle;
+    }
+}
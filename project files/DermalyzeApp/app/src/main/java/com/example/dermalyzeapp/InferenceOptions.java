@@ -0,0 +1,143 @@
+package com.example.dermalyzeapp;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * How the classifier's interpreters are configured: CPU thread count, XNNPACK and NNAPI.
+ *
+ * Which combination is fastest differs between SoCs, so {@link InferenceOptionsProbe} times
+ * the {@link #candidates} on the device and pins the winner. {@link #fallbackChain} lists
+ * what to try when a configuration fails to initialise, ending with the plain CPU path.
+ */
+public final class InferenceOptions {
+    private static final int MAX_THREADS = 4;
+
+    private final int numThreads;
+    private final boolean useXnnpack;
+    private final boolean useNnapi;
+
+    public InferenceOptions(int numThreads, boolean useXnnpack, boolean useNnapi) {
+        this.numThreads = Math.max(1, numThreads);
+        this.useXnnpack = useXnnpack;
+        this.useNnapi = useNnapi;
+    }
+
+    /**
+     * XNNPACK on the CPU, with the cores shared between the pooled interpreters.
+     */
+    public static InferenceOptions defaults(int poolSize) {
+        return new InferenceOptions(defaultThreadCount(poolSize), true, false);
+    }
+
+    static int defaultThreadCount(int poolSize) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(MAX_THREADS, cores / Math.max(1, poolSize)));
+    }
+
+    /**
+     * Configurations worth timing on this device.
+     */
+    public static List<InferenceOptions> candidates(int poolSize) {
+        int threads = defaultThreadCount(poolSize);
+        List<InferenceOptions> candidates = new ArrayList<>();
+        candidates.add(new InferenceOptions(threads, true, false));
+        if (threads > 1) {
+            candidates.add(new InferenceOptions(threads / 2, true, false));
+        }
+        candidates.add(new InferenceOptions(threads, false, false));
+        candidates.add(new InferenceOptions(1, false, true));
+        return candidates;
+    }
+
+    /**
+     * This configuration, then progressively safer ones down to single-threaded CPU.
+     */
+    public List<InferenceOptions> fallbackChain(int poolSize) {
+        List<InferenceOptions> chain = new ArrayList<>();
+        chain.add(this);
+        InferenceOptions cpu = defaults(poolSize);
+        if (!chain.contains(cpu)) {
+            chain.add(cpu);
+        }
+        InferenceOptions plain = new InferenceOptions(1, false, false);
+        if (!chain.contains(plain)) {
+            chain.add(plain);
+        }
+        return chain;
+    }
+
+    public Interpreter.Options toInterpreterOptions() {
+        Interpreter.Options options = new Interpreter.Options();
+        options.setNumThreads(numThreads);
+        options.setUseXNNPACK(useXnnpack);
+        options.setUseNNAPI(useNnapi);
+        return options;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public boolean isUseXnnpack() {
+        return useXnnpack;
+    }
+
+    public boolean isUseNnapi() {
+        return useNnapi;
+    }
+
+    /**
+     * Compact form used to persist the pinned configuration, e.g. {@code "4,xnnpack"}.
+     */
+    public String encode() {
+        return numThreads + "," + (useNnapi ? "nnapi" : useXnnpack ? "xnnpack" : "cpu");
+    }
+
+    public static InferenceOptions decode(String encoded) {
+        if (encoded == null) {
+            return null;
+        }
+        String[] parts = encoded.split(",");
+        if (parts.length != 2) {
+            return null;
+        }
+        try {
+            int threads = Integer.parseInt(parts[0]);
+            switch (parts[1]) {
+                case "nnapi":
+                    return new InferenceOptions(threads, false, true);
+                case "xnnpack":
+                    return new InferenceOptions(threads, true, false);
+                case "cpu":
+                    return new InferenceOptions(threads, false, false);
+                default:
+                    return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InferenceOptions)) return false;
+        InferenceOptions that = (InferenceOptions) o;
+        return numThreads == that.numThreads && useXnnpack == that.useXnnpack && useNnapi == that.useNnapi;
+    }
+
+    @Override
+    public int hashCode() {
+        return (numThreads * 31 + (useXnnpack ? 1 : 0)) * 31 + (useNnapi ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "InferenceOptions{threads=%d, xnnpack=%b, nnapi=%b}",
+                numThreads, useXnnpack, useNnapi);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Times each {@link InferenceOptions} candidate on a warm-up tensor and pins the fastest.
+ *
+ * The result is stored per model variant and thrown away when the OS build changes, so the
+ * probe normally runs once per device, on the first model load.
+ */
+final class InferenceOptionsProbe {
+    private static final String TAG = "InferenceOptionsProbe";
+    private static final String KEY_PINNED_PREFIX = "pinned_options_";
+    private static final String KEY_FINGERPRINT = "pinned_options_fingerprint";
+    private static final int WARM_UP_RUNS = 2;
+    private static final int TIMED_RUNS = 5;
+
+    private InferenceOptionsProbe() {
+    }
+
+    static InferenceOptions pinnedOrProbe(Context context, ModelVariant variant, ByteBuffer model, int poolSize) {
+        SharedPreferences prefs = context.getSharedPreferences(ModelVariant.PREFS_NAME, Context.MODE_PRIVATE);
+        String key = KEY_PINNED_PREFIX + variant.name();
+        if (Build.FINGERPRINT.equals(prefs.getString(KEY_FINGERPRINT, null))) {
+            InferenceOptions pinned = InferenceOptions.decode(prefs.getString(key, null));
+            if (pinned != null) {
+                return pinned;
+            }
+        }
+
+        InferenceOptions fastest = probe(model, poolSize);
+        prefs.edit()
+                .putString(KEY_FINGERPRINT, Build.FINGERPRINT)
+                .putString(key, fastest.encode())
+                .apply();
+        return fastest;
+    }
+
+    private static InferenceOptions probe(ByteBuffer model, int poolSize) {
+        InferenceOptions fastest = InferenceOptions.defaults(poolSize);
+        long fastestNanos = Long.MAX_VALUE;
+        for (InferenceOptions candidate : InferenceOptions.candidates(poolSize)) {
+            long nanos = time(model, candidate);
+            Log.d(TAG, candidate + ": " + (nanos == Long.MAX_VALUE ? "failed" : nanos / 1000 + " us"));
+            if (nanos < fastestNanos) {
+                fastestNanos = nanos;
+                fastest = candidate;
+            }
+        }
+        Log.d(TAG, "Pinned " + fastest);
+        return fastest;
+    }
+
+    /**
+     * Median latency of a single run, or {@link Long#MAX_VALUE} if the configuration fails.
+     */
+    private static long time(ByteBuffer model, InferenceOptions options) {
+        Interpreter interpreter = null;
+        try {
+            interpreter = new Interpreter(model, options.toInterpreterOptions());
+            ImagePreprocessor preprocessor = new ImagePreprocessor(
+                    interpreter.getInputTensor(0), interpreter.getOutputTensor(0));
+            for (int i = 0; i < WARM_UP_RUNS; i++) {
+                interpreter.run(preprocessor.getInputBuffer(), preprocessor.getOutput());
+            }
+            long[] samples = new long[TIMED_RUNS];
+            for (int i = 0; i < TIMED_RUNS; i++) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                interpreter.run(preprocessor.getInputBuffer(), preprocessor.getOutput());
+                samples[i] = SystemClock.elapsedRealtimeNanos() - start;
+            }
+            Arrays.sort(samples);
+            return samples[TIMED_RUNS / 2];
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Configuration not usable: " + options, e);
+            return Long.MAX_VALUE;
+        } finally {
+            if (interpreter != null) {
+                interpreter.close();
+            }
+        }
+    }
+}
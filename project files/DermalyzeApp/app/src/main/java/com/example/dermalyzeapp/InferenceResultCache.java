@@ -0,0 +1,306 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classification results keyed by the SHA-256 of the image bytes and the model that produced
+ * them, so the same photo is never classified or saved twice.
+ *
+ * A small in-memory LRU sits in front of a bounded directory of result files; the least
+ * recently used files are deleted once there are more than {@link #DISK_ENTRIES}. An entry
+ * also keeps the quality gate's warnings, so a cache hit can show them without checking the
+ * image again, and the scan it was saved as for each user, which is how a re-import is
+ * recognised as a duplicate. Reads and writes touch the disk, so call them off the main thread.
+ */
+public final class InferenceResultCache {
+    private static final String TAG = "InferenceResultCache";
+    static final int MEMORY_ENTRIES = 32;
+    static final int DISK_ENTRIES = 500;
+    private static final int FORMAT_VERSION = 2;
+
+    private static volatile InferenceResultCache instance;
+
+    private final File directory;
+    private final int diskEntries;
+    private final Map<String, Entry> memory;
+    private int diskCount = -1;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * A cached result. Only images the quality gate did not reject are cached, so
+     * {@code qualityIssues} are warnings; {@code savedScans} maps each user the result was saved
+     * for to the id of that scan.
+     */
+    public static final class Entry {
+        public final float[] probabilities;
+        final Set<ImageQualityGate.Issue> qualityIssues;
+        final Map<String, String> savedScans;
+
+        Entry(float[] probabilities, Set<ImageQualityGate.Issue> qualityIssues, Map<String, String> savedScans) {
+            this.probabilities = probabilities;
+            this.qualityIssues = qualityIssues;
+            this.savedScans = savedScans;
+        }
+
+        public boolean isSavedFor(String userId) {
+            return userId != null && savedScans.containsKey(userId);
+        }
+
+        /**
+         * The id of the scan this result was saved as in {@code userId}'s history, or null.
+         */
+        public String scanIdFor(String userId) {
+            return savedScans.get(userId);
+        }
+    }
+
+    InferenceResultCache(File directory, int memoryEntries, int diskEntries) {
+        this.directory = directory;
+        this.diskEntries = diskEntries;
+        this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+    }
+
+    public static InferenceResultCache getInstance(Context context) {
+        if (instance == null) {
+            synchronized (InferenceResultCache.class) {
+                if (instance == null) {
+                    instance = new InferenceResultCache(new File(context.getCacheDir(), "inference_results"),
+                            MEMORY_ENTRIES, DISK_ENTRIES);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Identifies the model that produced a result: the variant, whether augmentation was on,
+     * and the install, since an app update may ship a retrained model under the same name.
+     */
+    public static String modelTag(Context context, ModelVariant variant, boolean augmented) {
+        long installed = 0;
+        try {
+            installed = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Could not read install time", e);
+        }
+        return variant.name() + (augmented ? "+tta" : "") + "@" + installed;
+    }
+
+    public static String key(byte[] imageBytes, String modelTag) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        digest.update(imageBytes);
+        digest.update(modelTag.getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    public synchronized Entry get(String key) {
+        Entry entry = memory.get(key);
+        if (entry != null) {
+            memoryHits.incrementAndGet();
+            return entry;
+        }
+        File file = fileFor(key);
+        entry = read(file);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        diskHits.incrementAndGet();
+        // Refresh its place in the disk LRU
+        file.setLastModified(System.currentTimeMillis());
+        memory.put(key, entry);
+        return entry;
+    }
+
+    /**
+     * Caches the result for an image that passed the quality gate with {@code qualityIssues}
+     * as warnings. Rejected images must not be cached: they have to be checked again when
+     * they are imported again.
+     */
+    synchronized void put(String key, float[] probabilities, Set<ImageQualityGate.Issue> qualityIssues) {
+        store(key, new Entry(probabilities.clone(), copyOf(qualityIssues), Collections.emptyMap()));
+    }
+
+    /**
+     * Marks the result under {@code key} as saved to {@code userId}'s history as {@code scanId},
+     * keeping whatever it was saved as for other users.
+     */
+    public synchronized void recordScan(String key, String userId, String scanId) {
+        Entry entry = memory.get(key);
+        if (entry == null) {
+            entry = read(fileFor(key));
+        }
+        if (entry != null) {
+            Map<String, String> savedScans = new HashMap<>(entry.savedScans);
+            savedScans.put(userId, scanId);
+            store(key, new Entry(entry.probabilities, entry.qualityIssues,
+                    Collections.unmodifiableMap(savedScans)));
+        }
+    }
+
+    public long getHitCount() {
+        return memoryHits.get() + diskHits.get();
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private static Set<ImageQualityGate.Issue> copyOf(Set<ImageQualityGate.Issue> issues) {
+        return Collections.unmodifiableSet(issues.isEmpty()
+                ? EnumSet.noneOf(ImageQualityGate.Issue.class) : EnumSet.copyOf(issues));
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, key);
+    }
+
+    private void store(String key, Entry entry) {
+        memory.put(key, entry);
+        File file = fileFor(key);
+        boolean existed = file.exists();
+        if (!write(file, entry)) {
+            return;
+        }
+        if (!existed) {
+            if (diskCount < 0) {
+                File[] files = directory.listFiles();
+                diskCount = files != null ? files.length : 0;
+            } else {
+                diskCount++;
+            }
+            if (diskCount > diskEntries) {
+                trim();
+            }
+        }
+    }
+
+    private void trim() {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            diskCount = 0;
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        int excess = files.length - diskEntries;
+        for (int i = 0; i < excess; i++) {
+            if (files[i].delete()) {
+                memory.remove(files[i].getName());
+            }
+        }
+        diskCount = Math.min(files.length, diskEntries);
+    }
+
+    private static Entry read(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            float[] probabilities = new float[in.readInt()];
+            for (int i = 0; i < probabilities.length; i++) {
+                probabilities[i] = in.readFloat();
+            }
+            int issueBits = in.readInt();
+            Set<ImageQualityGate.Issue> qualityIssues = EnumSet.noneOf(ImageQualityGate.Issue.class);
+            for (ImageQualityGate.Issue issue : ImageQualityGate.Issue.values()) {
+                if ((issueBits & (1 << issue.ordinal())) != 0) {
+                    qualityIssues.add(issue);
+                }
+            }
+            int savedCount = in.readInt();
+            Map<String, String> savedScans = new HashMap<>();
+            for (int i = 0; i < savedCount; i++) {
+                String userId = in.readUTF();
+                savedScans.put(userId, in.readUTF());
+            }
+            return new Entry(probabilities, Collections.unmodifiableSet(qualityIssues),
+                    Collections.unmodifiableMap(savedScans));
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable cache entry " + file.getName(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private boolean write(File file, Entry entry) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Could not create " + directory);
+            return false;
+        }
+        // Written next to the entry and renamed, so a reader never sees half a file
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(entry.probabilities.length);
+            for (float probability : entry.probabilities) {
+                out.writeFloat(probability);
+            }
+            int issueBits = 0;
+            for (ImageQualityGate.Issue issue : entry.qualityIssues) {
+                issueBits |= 1 << issue.ordinal();
+            }
+            out.writeInt(issueBits);
+            out.writeInt(entry.savedScans.size());
+            for (Map.Entry<String, String> saved : entry.savedScans.entrySet()) {
+                out.writeUTF(saved.getKey());
+                out.writeUTF(saved.getValue());
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write cache entry", e);
+            temp.delete();
+            return false;
+        }
+        return temp.renameTo(file);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.dermalyzeapp;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size histogram of latencies in microseconds, bucketed the way HdrHistogram does it.
+ *
+ * Every power of two is split into {@value #SUB_BUCKETS} linear buckets, so any recorded
+ * value is reported within about 3% whatever its magnitude, in a few kilobytes and without
+ * allocating when recording.
+ */
+final class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    private final long[] counts = new long[(64 - SUB_BUCKET_BITS + 2) * HALF_SUB_BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    synchronized void record(long micros) {
+        long value = Math.max(0, micros);
+        counts[indexOf(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    synchronized long getCount() {
+        return count;
+    }
+
+    synchronized long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    synchronized long getMax() {
+        return max;
+    }
+
+    synchronized double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * The smallest recorded value such that {@code percentile}% of all values are at or
+     * below it, to the precision of its bucket.
+     */
+    synchronized long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * Math.min(100, percentile) / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.max(min, Math.min(max, highestValueIn(i)));
+            }
+        }
+        return max;
+    }
+
+    synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> magnitude);
+        return magnitude * HALF_SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = index / HALF_SUB_BUCKETS - 1;
+        long subBucket = index - magnitude * HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Classifies camera preview frames while the user frames a photo, so they see the likely
+ * condition and whether the picture is usable before shooting.
+ *
+ * Runs as a CameraX {@link ImageAnalysis} analyzer with {@code STRATEGY_KEEP_ONLY_LATEST} on
+ * its own background thread. Frames are skipped by a {@link FrameThrottle}; the ones analysed
+ * are converted from YUV straight into a reused 224x224 bitmap and, unless the camera is
+ * moving or the {@link ImageQualityGate} rejects the frame, classified on the shared engine.
+ * Their inference is timed under its own {@link ScanMetrics} stage, apart from diagnoses.
+ * Results are posted to the main thread. Call {@link #close()} once the camera is unbound.
+ */
+final class LivePreScreener implements ImageAnalysis.Analyzer {
+    private static final String TAG = "LivePreScreener";
+    static final int TARGET_FPS = 5;
+    // At most half of the analysis thread's time, so the preview keeps its frame rate
+    private static final float MAX_DUTY_CYCLE = 0.5f;
+    private static final float MAX_STEADY_MOTION = 12f;
+    private static final int SIZE = SkinClassifierEngine.IMAGE_SIZE;
+
+    /**
+     * What the pre-screen saw in the latest analysed frame. {@code condition} is null when the
+     * frame was not classified or no class was confident enough; {@code issues} is empty while
+     * the camera moves, since the frame is not checked then.
+     */
+    static final class Result {
+        final String condition;
+        final float confidence;
+        final boolean steady;
+        final Set<ImageQualityGate.Issue> issues;
+
+        Result(String condition, float confidence, boolean steady, Set<ImageQualityGate.Issue> issues) {
+            this.condition = condition;
+            this.confidence = confidence;
+            this.steady = steady;
+            this.issues = issues;
+        }
+    }
+
+    interface Listener {
+        void onPreScreen(Result result);
+    }
+
+    private final Context appContext;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final FrameThrottle throttle = new FrameThrottle(TARGET_FPS, MAX_DUTY_CYCLE);
+    private final FrameSteadiness steadiness = new FrameSteadiness(SIZE);
+    private final ImageQualityGate gate = new ImageQualityGate();
+    private final int[] pixels = new int[SIZE * SIZE];
+    private final float[] probabilities = new float[SkinClassifierEngine.NUM_CLASSES];
+    private final float[] calibrated = new float[SkinClassifierEngine.NUM_CLASSES];
+    private final PredictionPostProcessor.TopK top = new PredictionPostProcessor.TopK(PredictionPostProcessor.TOP_K);
+    private final Bitmap frame = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+
+    // Only touched on the analysis thread, apart from close()
+    private SkinClassifierEngine engine;
+    private boolean engineFailed;
+    private volatile boolean closed;
+
+    LivePreScreener(Context context, Listener listener) {
+        this.appContext = context.getApplicationContext();
+        this.listener = listener;
+    }
+
+    @Override
+    public void analyze(@NonNull ImageProxy image) {
+        try {
+            long start = SystemClock.elapsedRealtime();
+            if (closed || engineFailed || !throttle.tryStart(start)) {
+                return;
+            }
+            analyzeFrame(image);
+            throttle.finished(SystemClock.elapsedRealtime() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            image.close();
+        }
+    }
+
+    private void analyzeFrame(ImageProxy image) throws InterruptedException {
+        ImageProxy.PlaneProxy[] planes = image.getPlanes();
+        YuvConverter.toArgb(planes[0].getBuffer(), planes[0].getRowStride(), planes[0].getPixelStride(),
+                planes[1].getBuffer(), planes[2].getBuffer(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                image.getWidth(), image.getHeight(), image.getImageInfo().getRotationDegrees(), SIZE, pixels);
+
+        if (steadiness.update(pixels) > MAX_STEADY_MOTION) {
+            // Not worth an inference; the user is asked to fix the shot first
+            post(new Result(null, 0f, false, Collections.emptySet()));
+            return;
+        }
+        ImageQualityGate.Report quality = gate.check(pixels, SIZE, SIZE);
+        if (quality.verdict == ImageQualityGate.Verdict.REJECT) {
+            post(new Result(null, 0f, true, quality.issues));
+            return;
+        }
+
+        SkinClassifierEngine engine = engine();
+        if (engine == null) {
+            return;
+        }
+        frame.setPixels(pixels, 0, SIZE, 0, 0, SIZE, SIZE);
+        engine.classifyPreviewFrame(frame, probabilities);
+        // Same calibration and thresholds as a full diagnosis, so the hint agrees with it
+        int conditionIndex = PredictionPostProcessor.getInstance(appContext).select(probabilities, calibrated, top);
+        String condition = conditionIndex >= 0 ? SkinConditions.NAMES[conditionIndex] : null;
+        float confidence = conditionIndex >= 0 ? calibrated[conditionIndex] : top.probabilities[0];
+        post(new Result(condition, confidence, true, quality.issues));
+    }
+
+    private SkinClassifierEngine engine() {
+        if (engine == null) {
+            try {
+                engine = SkinClassifierEngine.getInstance(appContext);
+                // Keeps the interpreters loaded while the camera is open
+                engine.acquire();
+            } catch (IOException e) {
+                Log.w(TAG, "Live pre-screen disabled, classifier failed to load", e);
+                engineFailed = true;
+            }
+        }
+        return engine;
+    }
+
+    private void post(Result result) {
+        mainHandler.post(() -> {
+            if (!closed) {
+                listener.onPreScreen(result);
+            }
+        });
+    }
+
+    /**
+     * Stops delivering results and lets the engine be released. Must be called after the
+     * analyzer has been cleared, on the analysis executor, so no frame is in flight.
+     */
+    void close() {
+        closed = true;
+        if (engine != null) {
+            engine.release();
+            engine = null;
+        }
+        frame.recycle();
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.room.InvalidationTracker;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * {@link ScanHistoryRepository} that reads and writes the on-device {@link ScanDatabase}.
+ *
+ * Saving a scan is a local insert, so it works without a connection; {@link ScanSyncWorker}
+ * uploads it later and catches up on scans saved on other devices. While a user's history is
+ * observed, a Firestore snapshot listener on the scans updated since the last pull writes
+ * other devices' changes into the database as they happen, so the screens keep reading only
+ * the local store and still stay current. Pages are read with a keyset
+ * cursor on the timestamp index: {@link #loadMore} only reads the page after the oldest scan
+ * loaded, and a change to the table re-reads the loaded window down to that scan, not a
+ * growing {@code LIMIT}. Observers are called on the main thread.
+ */
+public final class LocalScanHistoryRepository implements ScanHistoryRepository {
+    private static final String TAG = "ScanHistoryRepository";
+
+    private static volatile LocalScanHistoryRepository instance;
+
+    private final Context appContext;
+    private final ScanDao dao;
+    private final Executor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Only touched on the main thread
+    private final Map<String, UserHistory> histories = new HashMap<>();
+    private final Set<String> syncedUsers = new HashSet<>();
+
+    private static final class UserHistory {
+        final List<Observer> observers = new ArrayList<>();
+        ListenerRegistration registration;
+        // Newest first; null until the first page has been read
+        List<ScanResult> scans;
+        boolean hasMore = false;
+        // Bumped whenever scans changes, so a read started on an older window is not applied
+        int version;
+        boolean reloading;
+        boolean reloadPending;
+        boolean loadingMore;
+    }
+
+    private LocalScanHistoryRepository(Context appContext) {
+        this.appContext = appContext;
+        ScanDatabase database = ScanDatabase.getInstance(appContext);
+        this.dao = database.scanDao();
+        this.executor = database.getQueryExecutor();
+        database.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("scans") {
+            @Override
+            public void onInvalidated(@NonNull Set<String> tables) {
+                mainHandler.post(() -> {
+                    for (String userId : histories.keySet()) {
+                        reload(userId);
+                    }
+                });
+            }
+        });
+    }
+
+    public static LocalScanHistoryRepository getInstance(Context context) {
+        if (instance == null) {
+            synchronized (LocalScanHistoryRepository.class) {
+                if (instance == null) {
+                    instance = new LocalScanHistoryRepository(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    @Override
+    public Subscription observe(String userId, Observer observer) {
+        UserHistory history = histories.get(userId);
+        if (history == null) {
+            history = new UserHistory();
+            histories.put(userId, history);
+            listen(userId, history);
+        }
+        history.observers.add(observer);
+        if (history.scans != null) {
+            observer.onScansChanged(history.scans);
+        }
+        reload(userId);
+
+        // Upload anything left pending and catch up on what the listener missed while the app was closed
+        if (syncedUsers.add(userId)) {
+            ScanSyncWorker.enqueue(appContext, userId);
+        }
+
+        UserHistory subscribed = history;
+        return () -> {
+            subscribed.observers.remove(observer);
+            if (subscribed.observers.isEmpty() && histories.get(userId) == subscribed) {
+                // Nobody is showing this history any more; stop listening until someone is
+                subscribed.registration.remove();
+                histories.remove(userId);
+            }
+        };
+    }
+
+    @Override
+    public void loadMore(String userId) {
+        UserHistory history = histories.get(userId);
+        if (history == null || !history.hasMore || history.loadingMore || history.scans.isEmpty()) {
+            return;
+        }
+        history.loadingMore = true;
+        int version = history.version;
+        ScanResult oldest = history.scans.get(history.scans.size() - 1);
+        executor.execute(() -> {
+            List<ScanEntity> page;
+            try {
+                page = dao.olderThan(userId, oldest.getTimestamp().getSeconds(),
+                        oldest.getTimestamp().getNanoseconds(), oldest.getId(), PAGE_SIZE + 1);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to load scan history", e);
+                mainHandler.post(() -> {
+                    history.loadingMore = false;
+                    notifyError(userId, e);
+                });
+                return;
+            }
+            mainHandler.post(() -> {
+                history.loadingMore = false;
+                if (histories.get(userId) != history) {
+                    return;
+                }
+                if (history.version != version) {
+                    // The window was re-read meanwhile; continue from its new end
+                    loadMore(userId);
+                    return;
+                }
+                List<ScanResult> scans = new ArrayList<>(history.scans);
+                scans.addAll(toScanResults(page, PAGE_SIZE));
+                publish(history, scans, page.size() > PAGE_SIZE);
+            });
+        });
+    }
+
+    @Override
+    public boolean hasMore(String userId) {
+        UserHistory history = histories.get(userId);
+        return history != null && history.hasMore;
+    }
+
+    @Override
+    public List<ScanResult> loadAll(String userId) {
+        List<ScanResult> scans = new ArrayList<>();
+        for (ScanEntity entity : dao.oldestFirst(userId)) {
+            scans.add(entity.toScanResult());
+        }
+        return scans;
+    }
+
+    @Override
+    public void save(String userId, List<ScanResult> scans, SaveCallback callback) {
+        List<ScanEntity> entities = new ArrayList<>();
+        for (ScanResult scan : scans) {
+            entities.add(ScanEntity.from(userId, scan, ScanEntity.SYNC_PENDING));
+        }
+        executor.execute(() -> {
+            ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.DATABASE_WRITE);
+            try {
+                dao.upsert(entities);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to save scans", e);
+                mainHandler.post(() -> callback.onError(e));
+                return;
+            } finally {
+                span.end();
+            }
+            ScanSyncWorker.enqueue(appContext, userId);
+            mainHandler.post(callback::onSaved);
+        });
+    }
+
+    @Override
+    public void clear() {
+        for (String userId : syncedUsers) {
+            // Pending scans stay on the device and are uploaded when the user signs in again
+            ScanSyncWorker.cancel(appContext, userId);
+        }
+        syncedUsers.clear();
+        for (UserHistory history : histories.values()) {
+            history.registration.remove();
+        }
+        histories.clear();
+    }
+
+    private void listen(String userId, UserHistory history) {
+        // Everything older has been pulled already; before the first pull the worker copies it all
+        Timestamp since = ScanSyncWorker.pulledUpTo(appContext, userId);
+        history.registration = FirebaseFirestore.getInstance()
+                .collection("users")
+                .document(userId)
+                .collection("scans")
+                .whereGreaterThan(ScanSyncWorker.FIELD_UPDATED_AT, since != null ? since : Timestamp.now())
+                .addSnapshotListener((snapshots, e) -> {
+                    if (e != null) {
+                        Log.e(TAG, "Scan history listener failed", e);
+                        notifyError(userId, e);
+                        return;
+                    }
+                    if (snapshots == null) {
+                        return;
+                    }
+                    RemoteScanChanges changes = new RemoteScanChanges();
+                    for (DocumentChange change : snapshots.getDocumentChanges()) {
+                        QueryDocumentSnapshot document = change.getDocument();
+                        if (document.getMetadata().hasPendingWrites()) {
+                            // Written on this device, so the database already has it
+                            continue;
+                        }
+                        if (change.getType() == DocumentChange.Type.REMOVED) {
+                            // updatedAt only grows, so a document leaves this query only when deleted
+                            changes.remove(document.getId());
+                            continue;
+                        }
+                        try {
+                            ScanResult scan = document.toObject(ScanResult.class);
+                            scan.setId(document.getId());
+                            changes.put(scan);
+                        } catch (RuntimeException parseError) {
+                            Log.e(TAG, "Error parsing scan result: " + document.getId(), parseError);
+                        }
+                    }
+                    if (changes.isEmpty()) {
+                        return;
+                    }
+                    // The invalidation tracker reloads the observed window once this is written
+                    executor.execute(() -> {
+                        try {
+                            dao.applyRemote(userId, changes);
+                        } catch (RuntimeException writeError) {
+                            Log.e(TAG, "Failed to store scans from other devices", writeError);
+                        }
+                    });
+                });
+    }
+
+    private void reload(String userId) {
+        UserHistory history = histories.get(userId);
+        if (history.reloading) {
+            // Coalesces bursts of invalidations into one more read once this one is done
+            history.reloadPending = true;
+            return;
+        }
+        history.reloading = true;
+        int version = history.version;
+        ScanResult oldest = history.scans == null || history.scans.isEmpty()
+                ? null : history.scans.get(history.scans.size() - 1);
+        executor.execute(() -> {
+            List<ScanResult> scans;
+            boolean hasMore;
+            try {
+                if (oldest == null) {
+                    List<ScanEntity> page = dao.newest(userId, PAGE_SIZE + 1);
+                    scans = toScanResults(page, PAGE_SIZE);
+                    hasMore = page.size() > PAGE_SIZE;
+                } else {
+                    long seconds = oldest.getTimestamp().getSeconds();
+                    int nanos = oldest.getTimestamp().getNanoseconds();
+                    scans = toScanResults(dao.newestDownTo(userId, seconds, nanos, oldest.getId()),
+                            Integer.MAX_VALUE);
+                    hasMore = !dao.olderThan(userId, seconds, nanos, oldest.getId(), 1).isEmpty();
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to load scan history", e);
+                mainHandler.post(() -> {
+                    history.reloading = false;
+                    notifyError(userId, e);
+                });
+                return;
+            }
+            mainHandler.post(() -> {
+                history.reloading = false;
+                if (histories.get(userId) != history) {
+                    return;
+                }
+                if (history.version != version) {
+                    // A page was added while reading; read the new window instead
+                    history.reloadPending = false;
+                    reload(userId);
+                    return;
+                }
+                publish(history, scans, hasMore);
+                if (history.reloadPending) {
+                    history.reloadPending = false;
+                    reload(userId);
+                }
+            });
+        });
+    }
+
+    private static List<ScanResult> toScanResults(List<ScanEntity> entities, int max) {
+        List<ScanResult> scans = new ArrayList<>(Math.min(entities.size(), max));
+        for (int i = 0; i < entities.size() && i < max; i++) {
+            scans.add(entities.get(i).toScanResult());
+        }
+        return scans;
+    }
+
+    private static void publish(UserHistory history, List<ScanResult> scans, boolean hasMore) {
+        history.scans = scans;
+        history.hasMore = hasMore;
+        history.version++;
+        for (Observer observer : new ArrayList<>(history.observers)) {
+            observer.onScansChanged(scans);
+        }
+    }
+
+    private void notifyError(String userId, Exception e) {
+        UserHistory history = histories.get(userId);
+        if (history != null) {
+            for (Observer observer : new ArrayList<>(history.observers)) {
+                observer.onError(e);
+            }
+        }
+    }
+}
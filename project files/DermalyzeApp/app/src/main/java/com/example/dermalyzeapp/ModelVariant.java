@@ -0,0 +1,86 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The exported variants of the skin model, in order of preference.
+ *
+ * The int8 and float16 files are produced by the conversion cells at the end of the training
+ * notebook. A variant is only picked when its file is bundled with the app and the device
+ * can run it; otherwise selection falls through to the float model.
+ */
+public enum ModelVariant {
+    INT8("skin_model_int8.tflite"),
+    FLOAT16("skin_model_fp16.tflite"),
+    FLOAT32("skin_model.tflite");
+
+    private static final String TAG = "ModelVariant";
+    static final String PREFS_NAME = "inference_settings";
+    static final String KEY_MODEL_VARIANT = "model_variant";
+
+    private final String assetPath;
+
+    ModelVariant(String assetPath) {
+        this.assetPath = assetPath;
+    }
+
+    public String getAssetPath() {
+        return assetPath;
+    }
+
+    /**
+     * Variants to try for this device, best first. A variant forced through the
+     * {@code model_variant} setting goes first; the float model is always last.
+     */
+    public static List<ModelVariant> candidates(Context context) {
+        List<ModelVariant> candidates = new ArrayList<>();
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String forced = prefs.getString(KEY_MODEL_VARIANT, null);
+        if (forced != null) {
+            try {
+                ModelVariant variant = valueOf(forced);
+                if (variant.isBundled(context)) {
+                    candidates.add(variant);
+                }
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring unknown model variant setting: " + forced);
+            }
+        }
+
+        for (ModelVariant variant : values()) {
+            if (variant != FLOAT32 && !candidates.contains(variant)
+                    && variant.isSupported() && variant.isBundled(context)) {
+                candidates.add(variant);
+            }
+        }
+        if (!candidates.contains(FLOAT32)) {
+            candidates.add(FLOAT32);
+        }
+        return candidates;
+    }
+
+    private boolean isSupported() {
+        // Integer kernels only pay off on 64-bit ARM cores; elsewhere the float16 file runs
+        // just as fast and loses less accuracy
+        return this != INT8 || Build.SUPPORTED_64_BIT_ABIS.length > 0;
+    }
+
+    private boolean isBundled(Context context) {
+        try {
+            // Listing the directory tells whether the file is there without opening it
+            String[] assets = context.getAssets().list("");
+            return assets != null && Arrays.asList(assets).contains(assetPath);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not list the bundled models", e);
+            return false;
+        }
+    }
+}
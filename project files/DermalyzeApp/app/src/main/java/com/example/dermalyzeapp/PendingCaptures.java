@@ -0,0 +1,51 @@
+package com.example.dermalyzeapp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Camera captures handed from {@link ScanActivity} to {@link DiagnosisActivity} in memory.
+ *
+ * A full-resolution JPEG is far too large for an Intent, so the capture is parked here and
+ * only its id is passed along. The diagnosis screen removes it once it finishes. Only the
+ * last few captures are kept, in case a screen never comes to claim its own; they are also
+ * gone if the process dies, in which case the screen reports the photo as lost.
+ */
+final class PendingCaptures {
+    static final int MAX_PENDING = 2;
+
+    private static int nextId;
+    private static final Map<String, Capture> captures = new LinkedHashMap<String, Capture>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Capture> eldest) {
+            return size() > MAX_PENDING;
+        }
+    };
+
+    static final class Capture {
+        final byte[] jpeg;
+        final int rotationDegrees;
+
+        Capture(byte[] jpeg, int rotationDegrees) {
+            this.jpeg = jpeg;
+            this.rotationDegrees = rotationDegrees;
+        }
+    }
+
+    private PendingCaptures() {
+    }
+
+    static synchronized String put(byte[] jpeg, int rotationDegrees) {
+        String id = "capture-" + ++nextId;
+        captures.put(id, new Capture(jpeg, rotationDegrees));
+        return id;
+    }
+
+    static synchronized Capture get(String id) {
+        return captures.get(id);
+    }
+
+    static synchronized void remove(String id) {
+        captures.remove(id);
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * Turns the classifier's probabilities into a prediction: temperature calibration, the top-k
+ * classes and a confidence bar per class.
+ *
+ * Settings are read once from {@code assets/postprocessing.properties}:
+ * {@code temperature}, {@code threshold.default} and {@code threshold.<code>} for any of the
+ * {@link SkinConditions#CODES}. The reported class is the most probable one that clears its
+ * own bar, so a lower bar for Melanoma can flag it even when a benign class scores slightly
+ * higher. Works on primitive arrays only; {@link #select} allocates nothing and is what the
+ * live pre-screen uses on every frame. Immutable and thread-safe.
+ */
+final class PredictionPostProcessor {
+    private static final String TAG = "PredictionPostProcessor";
+    static final String CONFIG_ASSET = "postprocessing.properties";
+    static final int TOP_K = 3;
+    // Keeps the log finite for classes a quantized model scores as exactly 0
+    private static final double MIN_PROBABILITY = 1e-7;
+
+    private static volatile PredictionPostProcessor instance;
+
+    private final float temperature;
+    private final float[] thresholds;
+
+    /**
+     * The {@code size} most probable classes, most probable first; ties keep the lower index
+     * first. Reused between calls to {@link #select}.
+     */
+    static final class TopK {
+        final int[] indices;
+        final float[] probabilities;
+        int size;
+
+        TopK(int capacity) {
+            indices = new int[capacity];
+            probabilities = new float[capacity];
+        }
+    }
+
+    static final class Prediction {
+        final float[] calibrated;
+        final TopK top;
+        // Index into SkinConditions.NAMES; -1 when no class cleared its threshold
+        final int conditionIndex;
+
+        Prediction(float[] calibrated, TopK top, int conditionIndex) {
+            this.calibrated = calibrated;
+            this.top = top;
+            this.conditionIndex = conditionIndex;
+        }
+
+        boolean isConfident() {
+            return conditionIndex >= 0;
+        }
+
+        /**
+         * Calibrated probability of the reported class, or of the most probable one when
+         * none was confident enough.
+         */
+        float getConfidence() {
+            return isConfident() ? calibrated[conditionIndex] : top.probabilities[0];
+        }
+    }
+
+    PredictionPostProcessor(float temperature, float[] thresholds) {
+        if (!(temperature > 0) || Float.isInfinite(temperature)) {
+            throw new IllegalArgumentException("Temperature must be positive: " + temperature);
+        }
+        for (float threshold : thresholds) {
+            if (!(threshold > 0 && threshold <= 1)) {
+                throw new IllegalArgumentException("Threshold must be in (0, 1]: " + threshold);
+            }
+        }
+        this.temperature = temperature;
+        this.thresholds = thresholds.clone();
+    }
+
+    /**
+     * No calibration and {@link SkinConditions#PROBABILITY_THRESHOLD} for every class.
+     */
+    static PredictionPostProcessor defaults() {
+        float[] thresholds = new float[SkinConditions.NAMES.length];
+        Arrays.fill(thresholds, SkinConditions.PROBABILITY_THRESHOLD);
+        return new PredictionPostProcessor(1f, thresholds);
+    }
+
+    /**
+     * The settings bundled with the app, or {@link #defaults()} if they are missing or invalid.
+     * Reads an asset on first use, so call it off the main thread.
+     */
+    static PredictionPostProcessor getInstance(Context context) {
+        if (instance == null) {
+            synchronized (PredictionPostProcessor.class) {
+                if (instance == null) {
+                    instance = load(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static PredictionPostProcessor load(Context context) {
+        try (InputStream in = context.getAssets().open(CONFIG_ASSET)) {
+            Properties properties = new Properties();
+            properties.load(in);
+            return fromProperties(properties);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Using default post-processing, could not read " + CONFIG_ASSET, e);
+            return defaults();
+        }
+    }
+
+    static PredictionPostProcessor fromProperties(Properties properties) {
+        float temperature = parse(properties, "temperature", 1f);
+        float[] thresholds = new float[SkinConditions.CODES.length];
+        Arrays.fill(thresholds, parse(properties, "threshold.default", SkinConditions.PROBABILITY_THRESHOLD));
+        for (String key : properties.stringPropertyNames()) {
+            if (key.equals("temperature") || key.equals("threshold.default")) {
+                continue;
+            }
+            if (!key.startsWith("threshold.")) {
+                throw new IllegalArgumentException("Unknown setting: " + key);
+            }
+            int index = Arrays.asList(SkinConditions.CODES).indexOf(key.substring("threshold.".length()));
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown condition code: " + key);
+            }
+            thresholds[index] = parse(properties, key, thresholds[index]);
+        }
+        return new PredictionPostProcessor(temperature, thresholds);
+    }
+
+    private static float parse(Properties properties, String key, float fallback) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for " + key + ": " + value, e);
+        }
+    }
+
+    float getTemperature() {
+        return temperature;
+    }
+
+    float getThreshold(int classIndex) {
+        return thresholds[classIndex];
+    }
+
+    Prediction process(float[] probabilities) {
+        float[] calibrated = new float[probabilities.length];
+        TopK top = new TopK(Math.min(TOP_K, probabilities.length));
+        int conditionIndex = select(probabilities, calibrated, top);
+        return new Prediction(calibrated, top, conditionIndex);
+    }
+
+    /**
+     * Calibrates {@code probabilities} into {@code calibrated}, fills {@code top} and returns
+     * the index of the reported class, or -1 when no class cleared its threshold.
+     */
+    int select(float[] probabilities, float[] calibrated, TopK top) {
+        calibrate(probabilities, temperature, calibrated);
+        topK(calibrated, top);
+        int best = -1;
+        for (int i = 0; i < calibrated.length; i++) {
+            if (calibrated[i] >= thresholds[i] && (best < 0 || calibrated[i] > calibrated[best])) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Temperature scaling of a probability vector: a softmax over {@code log(p) / temperature}.
+     * The maximum is subtracted first so no term overflows; a temperature of 1 is a copy.
+     */
+    static void calibrate(float[] probabilities, float temperature, float[] calibrated) {
+        if (temperature == 1f) {
+            System.arraycopy(probabilities, 0, calibrated, 0, probabilities.length);
+            return;
+        }
+        double inverse = 1.0 / temperature;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < probabilities.length; i++) {
+            double logit = Math.log(Math.max(probabilities[i], MIN_PROBABILITY)) * inverse;
+            calibrated[i] = (float) logit;
+            max = Math.max(max, logit);
+        }
+        double sum = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            double e = Math.exp(calibrated[i] - max);
+            calibrated[i] = (float) e;
+            sum += e;
+        }
+        for (int i = 0; i < probabilities.length; i++) {
+            calibrated[i] = (float) (calibrated[i] / sum);
+        }
+    }
+
+    /**
+     * Insertion into a sorted array of {@code top.indices.length} entries; with seven classes
+     * and k = 3 this beats sorting or a heap.
+     */
+    static void topK(float[] probabilities, TopK top) {
+        int capacity = top.indices.length;
+        int size = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            float p = probabilities[i];
+            if (size == capacity && !(p > top.probabilities[size - 1])) {
+                continue;
+            }
+            int position = size < capacity ? size++ : size - 1;
+            while (position > 0 && p > top.probabilities[position - 1]) {
+                top.indices[position] = top.indices[position - 1];
+                top.probabilities[position] = top.probabilities[position - 1];
+                position--;
+            }
+            top.indices[position] = i;
+            top.probabilities[position] = p;
+        }
+        top.size = size;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.dermalyzeapp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The document changes of one Firestore snapshot of a user's scans, folded by id into what
+ * the local store has to apply. The last change to a document wins, and scans this device
+ * has not uploaded yet are never overwritten or removed by a remote change.
+ */
+final class RemoteScanChanges {
+    private final Map<String, ScanResult> upserts = new LinkedHashMap<>();
+    private final Set<String> removals = new LinkedHashSet<>();
+
+    /**
+     * Adds {@code scan}, or replaces an earlier change to the scan with the same id.
+     */
+    void put(ScanResult scan) {
+        removals.remove(scan.getId());
+        upserts.put(scan.getId(), scan);
+    }
+
+    void remove(String id) {
+        upserts.remove(id);
+        removals.add(id);
+    }
+
+    boolean isEmpty() {
+        return upserts.isEmpty() && removals.isEmpty();
+    }
+
+    /**
+     * Every id this batch touches, to look up which of them are still pending locally.
+     */
+    List<String> ids() {
+        List<String> ids = new ArrayList<>(upserts.keySet());
+        ids.addAll(removals);
+        return ids;
+    }
+
+    List<ScanResult> upserts(Collection<String> pendingIds) {
+        List<ScanResult> scans = new ArrayList<>();
+        for (ScanResult scan : upserts.values()) {
+            if (!pendingIds.contains(scan.getId())) {
+                scans.add(scan);
+            }
+        }
+        return scans;
+    }
+
+    List<String> removals(Collection<String> pendingIds) {
+        List<String> ids = new ArrayList<>();
+        for (String id : removals) {
+            if (!pendingIds.contains(id)) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
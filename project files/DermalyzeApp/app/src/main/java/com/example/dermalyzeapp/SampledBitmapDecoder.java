@@ -0,0 +1,130 @@
+package com.example.dermalyzeapp;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Bounds-first bitmap decoding.
+ *
+ * Reads the image dimensions without allocating pixels, then decodes with the largest
+ * power-of-two {@code inSampleSize} that still keeps the image at or above the requested
+ * size. A 48 MP photo destined for a 224x224 model input is decoded at roughly 1/16th of
+ * its resolution instead of in full.
+ */
+public final class SampledBitmapDecoder {
+
+    /**
+     * Opens a fresh stream over the same encoded image each time it is called.
+     */
+    public interface StreamSource {
+        InputStream open() throws IOException;
+    }
+
+    private SampledBitmapDecoder() {
+    }
+
+    /**
+     * Largest power-of-two sample size that keeps {@code side} at or above {@code minSize}.
+     */
+    static int calculateInSampleSize(int side, int minSize) {
+        int inSampleSize = 1;
+        while (side / (inSampleSize * 2) >= minSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Decodes {@code bytes} so that the longest side is just above {@code maxSize}.
+     */
+    public static Bitmap decodeForDisplay(byte[] bytes, int maxSize) throws IOException {
+        BitmapFactory.Options options = readBounds(bytes);
+        options.inSampleSize = calculateInSampleSize(Math.max(options.outWidth, options.outHeight), maxSize);
+        return decode(bytes, options);
+    }
+
+    /**
+     * Same as {@link #decodeForDisplay(byte[], int)} without holding the encoded image in
+     * memory: the bounds and the pixels are each read from their own stream.
+     */
+    public static Bitmap decodeForDisplay(StreamSource source, int maxSize) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = source.open()) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Could not decode image.");
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(Math.max(options.outWidth, options.outHeight), maxSize);
+
+        Bitmap bitmap;
+        try (InputStream in = source.open()) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Could not decode image.");
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes {@code bytes} so that both sides are just above the model input size, ready for
+     * the final resize in the classifier.
+     *
+     * @param preferRgb565 decode to RGB_565 to halve the allocation; only for consumers that
+     *                     read pixels through {@link Bitmap#getPixels} and can afford losing
+     *                     colour depth. The classifier does not use it: its top-1 has not been
+     *                     checked against ARGB_8888 input
+     * @param reuse        optional mutable bitmap whose memory is reused when large enough
+     */
+    public static Bitmap decodeForModelInput(byte[] bytes, boolean preferRgb565, Bitmap reuse) throws IOException {
+        BitmapFactory.Options options = readBounds(bytes);
+        options.inSampleSize = calculateInSampleSize(Math.min(options.outWidth, options.outHeight),
+                SkinClassifierEngine.IMAGE_SIZE);
+        options.inPreferredConfig = preferRgb565 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        if (reuse != null && !reuse.isRecycled() && reuse.isMutable() && reuse.getConfig() == options.inPreferredConfig
+                && reuse.getAllocationByteCount() >= decodedByteCount(options)) {
+            options.inBitmap = reuse;
+        }
+        return decode(bytes, options);
+    }
+
+    private static BitmapFactory.Options readBounds(byte[] bytes) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Could not decode image.");
+        }
+        options.inJustDecodeBounds = false;
+        return options;
+    }
+
+    private static long decodedByteCount(BitmapFactory.Options options) {
+        long width = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        long height = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        int bytesPerPixel = options.inPreferredConfig == Bitmap.Config.RGB_565 ? 2 : 4;
+        return width * height * bytesPerPixel;
+    }
+
+    private static Bitmap decode(byte[] bytes, BitmapFactory.Options options) throws IOException {
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        } catch (IllegalArgumentException e) {
+            // inBitmap turned out to be incompatible; decode into a fresh bitmap instead
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Could not decode image.");
+        }
+        return bitmap;
+    }
+}
@@ -1,13 +1,16 @@
 package com.example.dermalyzeapp;
 
 import android.Manifest;
+import android.content.ClipData;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
 import android.net.Uri;
 import android.os.Bundle;
-import android.provider.MediaStore;
-import android.util.Log;
+import android.os.Process;
+import android.util.Size;
+import android.view.View;
 import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
@@ -15,9 +18,13 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
+import androidx.camera.core.ImageAnalysis;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.ImageCaptureException;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
+import androidx.camera.core.resolutionselector.ResolutionSelector;
+import androidx.camera.core.resolutionselector.ResolutionStrategy;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -25,15 +32,19 @@ import androidx.core.content.ContextCompat;
 import com.example.dermalyzeapp.databinding.ActivityScanBinding;
 import com.google.common.util.concurrent.ListenableFuture;
 
-import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Locale;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ScanActivity extends AppCompatActivity {
     private ActivityScanBinding binding;
     private ImageCapture imageCapture;
+    private ImageAnalysis imageAnalysis;
+    private ExecutorService analysisExecutor;
+    private LivePreScreener preScreener;
     private final ActivityResultLauncher<String> requestPermissionLauncher =
             registerForActivityResult(new ActivityResultContracts.RequestPermission(), isGranted -> {
                 if (isGranted) {
@@ -47,8 +58,18 @@ public class ScanActivity extends AppCompatActivity {
     private final ActivityResultLauncher<Intent> galleryLauncher =
             registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), result -> {
                 if (result.getResultCode() == RESULT_OK && result.getData() != null) {
-                    Uri selectedImage = result.getData().getData();
-                    processImage(selectedImage);
+                    ClipData clipData = result.getData().getClipData();
+                    if (clipData != null && clipData.getItemCount() > 1) {
+                        ArrayList<String> imageUris = new ArrayList<>();
+                        for (int i = 0; i < clipData.getItemCount(); i++) {
+                            imageUris.add(clipData.getItemAt(i).getUri().toString());
+                        }
+                        processImages(imageUris);
+                    } else {
+                        Uri selectedImage = clipData != null
+                                ? clipData.getItemAt(0).getUri() : result.getData().getData();
+                        processImage(selectedImage);
+                    }
                 }
             });
 
@@ -58,6 +79,9 @@ public class ScanActivity extends AppCompatActivity {
         binding = ActivityScanBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
+        // Load the classifier while the user frames the photo
+        SkinClassifierEngine.preload(this);
+
         if (allPermissionsGranted()) {
             startCamera();
         } else {
@@ -77,14 +101,27 @@ public class ScanActivity extends AppCompatActivity {
                 Preview preview = new Preview.Builder().build();
                 preview.setSurfaceProvider(binding.cameraPreview.getSurfaceProvider());
 
-                imageCapture = new ImageCapture.Builder().build();
+                imageCapture = new ImageCapture.Builder()
+                        .setCaptureMode(ImageCapture.CAPTURE_MODE_MINIMIZE_LATENCY)
+                        .build();
+
+                // Small frames are plenty for a 224x224 classifier and keep the conversion cheap
+                imageAnalysis = new ImageAnalysis.Builder()
+                        .setBackpressureStrategy(ImageAnalysis.STRATEGY_KEEP_ONLY_LATEST)
+                        .setOutputImageFormat(ImageAnalysis.OUTPUT_IMAGE_FORMAT_YUV_420_888)
+                        .setResolutionSelector(new ResolutionSelector.Builder()
+                                .setResolutionStrategy(new ResolutionStrategy(new Size(640, 480),
+                                        ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER_THEN_LOWER))
+                                .build())
+                        .build();
+                startPreScreen();
 
                 CameraSelector cameraSelector = new CameraSelector.Builder()
                         .requireLensFacing(CameraSelector.LENS_FACING_BACK)
                         .build();
 
                 cameraProvider.unbindAll();
-                cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageCapture);
+                cameraProvider.bindToLifecycle(this, cameraSelector, preview, imageCapture, imageAnalysis);
 
             } catch (ExecutionException | InterruptedException e) {
                 Toast.makeText(this, "Error starting camera: " + e.getMessage(), Toast.LENGTH_SHORT).show();
@@ -92,21 +129,62 @@ public class ScanActivity extends AppCompatActivity {
         }, ContextCompat.getMainExecutor(this));
     }
 
-    private void takePhoto() {
-        if (imageCapture == null) return;
+    private void startPreScreen() {
+        if (preScreener == null) {
+            analysisExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "dermalyze-prescreen");
+                thread.setDaemon(true);
+                return thread;
+            });
+            preScreener = new LivePreScreener(this, this::showPreScreen);
+        }
+        imageAnalysis.setAnalyzer(analysisExecutor, preScreener);
+    }
 
-        File photoFile = new File(getExternalCacheDir(),
-                new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss-SSS", Locale.US)
-                        .format(System.currentTimeMillis()) + ".jpg");
+    private void showPreScreen(LivePreScreener.Result result) {
+        binding.preScreenOverlay.setVisibility(View.VISIBLE);
+        if (result.condition != null) {
+            binding.preScreenResultText.setText(getString(R.string.prescreen_result, result.condition,
+                    result.confidence * 100));
+        } else if (result.steady && result.issues.isEmpty()) {
+            binding.preScreenResultText.setText(R.string.prescreen_searching);
+        }
+        if (!result.steady) {
+            binding.preScreenQualityText.setText(R.string.prescreen_hold_steady);
+        } else if (!result.issues.isEmpty()) {
+            binding.preScreenQualityText.setText(ImageQualityGate.describe(this, result.issues));
+        } else {
+            binding.preScreenQualityText.setText(R.string.prescreen_quality_good);
+        }
+    }
 
-        ImageCapture.OutputFileOptions outputOptions = new ImageCapture.OutputFileOptions.Builder(photoFile).build();
+    private void takePhoto() {
+        if (imageCapture == null) return;
 
-        imageCapture.takePicture(outputOptions, ContextCompat.getMainExecutor(this),
-                new ImageCapture.OnImageSavedCallback() {
+        // Captured into memory: the JPEG goes straight to the diagnosis screen and is only
+        // written to disk once, when the scan is saved
+        imageCapture.takePicture(ContextCompat.getMainExecutor(this),
+                new ImageCapture.OnImageCapturedCallback() {
                     @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults output) {
-                        Uri savedUri = Uri.fromFile(photoFile);
-                        processImage(savedUri);
+                    public void onCaptureSuccess(@NonNull ImageProxy image) {
+                        byte[] jpeg;
+                        int rotationDegrees;
+                        try {
+                            jpeg = copyJpeg(image);
+                            rotationDegrees = image.getImageInfo().getRotationDegrees();
+                        } finally {
+                            // Hands the buffer back to the camera straight away
+                            image.close();
+                        }
+                        if (jpeg == null) {
+                            Toast.makeText(ScanActivity.this, "Error capturing image: unsupported format",
+                                    Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        processCapture(PendingCaptures.put(jpeg, rotationDegrees));
                     }
 
                     @Override
@@ -117,19 +195,56 @@ public class ScanActivity extends AppCompatActivity {
                 });
     }
 
+    private static byte[] copyJpeg(ImageProxy image) {
+        if (image.getFormat() != ImageFormat.JPEG) {
+            return null;
+        }
+        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+        buffer.rewind();
+        byte[] jpeg = new byte[buffer.remaining()];
+        buffer.get(jpeg);
+        return jpeg;
+    }
+
     private void openGallery() {
-        Intent intent = new Intent(Intent.ACTION_PICK, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("image/*");
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
         galleryLauncher.launch(intent);
     }
 
     private void processImage(Uri imageUri) {
-        Log.d("ScanActivity", "Launching DiagnosisActivity with imageUri: " + imageUri);
-        Toast.makeText(this, "Launching DiagnosisActivity", Toast.LENGTH_SHORT).show();
         Intent intent = new Intent(this, DiagnosisActivity.class);
         intent.putExtra("imageUri", imageUri.toString());
         startActivity(intent);
     }
 
+    private void processCapture(String captureId) {
+        Intent intent = new Intent(this, DiagnosisActivity.class);
+        intent.putExtra(DiagnosisActivity.EXTRA_CAPTURE_ID, captureId);
+        startActivity(intent);
+    }
+
+    private void processImages(ArrayList<String> imageUris) {
+        Intent intent = new Intent(this, BatchDiagnosisActivity.class);
+        intent.putStringArrayListExtra(BatchDiagnosisActivity.EXTRA_IMAGE_URIS, imageUris);
+        startActivity(intent);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (imageAnalysis != null) {
+            imageAnalysis.clearAnalyzer();
+        }
+        if (analysisExecutor != null) {
+            // Closed on the analysis thread, after any frame still being analysed
+            LivePreScreener screener = preScreener;
+            analysisExecutor.execute(screener::close);
+            analysisExecutor.shutdown();
+        }
+    }
+
     private boolean allPermissionsGranted() {
         return ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA) == PackageManager.PERMISSION_GRANTED;
     }
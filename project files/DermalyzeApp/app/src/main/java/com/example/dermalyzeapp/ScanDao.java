@@ -0,0 +1,88 @@
+package com.example.dermalyzeapp;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Dao
+public interface ScanDao {
+    // Stays under SQLite's default limit of 999 bound parameters per statement
+    int MAX_IDS_PER_QUERY = 500;
+
+    @Query("SELECT * FROM scans WHERE userId = :userId "
+            + "ORDER BY timestampSeconds DESC, timestampNanos DESC, id DESC LIMIT :limit")
+    List<ScanEntity> newest(String userId, int limit);
+
+    @Query("SELECT * FROM scans WHERE userId = :userId ORDER BY timestampSeconds, timestampNanos, id")
+    List<ScanEntity> oldestFirst(String userId);
+
+    /**
+     * The next page after the scan at ({@code seconds}, {@code nanos}, {@code id}), newest first.
+     */
+    @Query("SELECT * FROM scans WHERE userId = :userId "
+            + "AND (timestampSeconds, timestampNanos, id) < (:seconds, :nanos, :id) "
+            + "ORDER BY timestampSeconds DESC, timestampNanos DESC, id DESC LIMIT :limit")
+    List<ScanEntity> olderThan(String userId, long seconds, int nanos, String id, int limit);
+
+    /**
+     * Every scan from the newest down to and including the one at ({@code seconds},
+     * {@code nanos}, {@code id}), i.e. the window already loaded.
+     */
+    @Query("SELECT * FROM scans WHERE userId = :userId "
+            + "AND (timestampSeconds, timestampNanos, id) >= (:seconds, :nanos, :id) "
+            + "ORDER BY timestampSeconds DESC, timestampNanos DESC, id DESC")
+    List<ScanEntity> newestDownTo(String userId, long seconds, int nanos, String id);
+
+    @Query("SELECT * FROM scans WHERE userId = :userId AND syncState = " + ScanEntity.SYNC_PENDING
+            + " ORDER BY timestampSeconds, timestampNanos LIMIT :limit")
+    List<ScanEntity> pending(String userId, int limit);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(List<ScanEntity> scans);
+
+    /**
+     * Inserts scans pulled from Firestore without touching rows this device already has.
+     */
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertIfAbsent(List<ScanEntity> scans);
+
+    @Query("UPDATE scans SET syncState = " + ScanEntity.SYNC_DONE + " WHERE userId = :userId AND id IN (:ids)")
+    void markSynced(String userId, List<String> ids);
+
+    @Query("SELECT id FROM scans WHERE userId = :userId AND syncState = " + ScanEntity.SYNC_PENDING
+            + " AND id IN (:ids)")
+    List<String> pendingAmong(String userId, List<String> ids);
+
+    @Query("DELETE FROM scans WHERE userId = :userId AND id IN (:ids)")
+    void delete(String userId, List<String> ids);
+
+    /**
+     * Applies changes heard from Firestore, leaving the scans still waiting for upload as they are.
+     */
+    @Transaction
+    default void applyRemote(String userId, RemoteScanChanges changes) {
+        List<String> ids = changes.ids();
+        Set<String> pending = new HashSet<>();
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+            pending.addAll(pendingAmong(userId, ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_QUERY))));
+        }
+        List<ScanEntity> entities = new ArrayList<>();
+        for (ScanResult scan : changes.upserts(pending)) {
+            entities.add(ScanEntity.from(userId, scan, ScanEntity.SYNC_DONE));
+        }
+        if (!entities.isEmpty()) {
+            upsert(entities);
+        }
+        List<String> removed = changes.removals(pending);
+        for (int start = 0; start < removed.size(); start += MAX_IDS_PER_QUERY) {
+            delete(userId, removed.subList(start, Math.min(removed.size(), start + MAX_IDS_PER_QUERY)));
+        }
+    }
+}
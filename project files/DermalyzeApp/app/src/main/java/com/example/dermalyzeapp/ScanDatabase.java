@@ -0,0 +1,51 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.room.Database;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+/**
+ * On-device store of the user's scans; the history screens read from here.
+ */
+@Database(entities = {ScanEntity.class}, version = 3, exportSchema = false)
+public abstract class ScanDatabase extends RoomDatabase {
+    private static volatile ScanDatabase instance;
+
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE scans ADD COLUMN thumbnailPath TEXT");
+        }
+    };
+
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE scans ADD COLUMN conditionIndex INTEGER NOT NULL DEFAULT -1");
+            for (int i = 0; i < SkinConditions.NAMES.length; i++) {
+                db.execSQL("UPDATE scans SET conditionIndex = ? WHERE condition = ?",
+                        new Object[]{i, SkinConditions.NAMES[i]});
+            }
+        }
+    };
+
+    public abstract ScanDao scanDao();
+
+    public static ScanDatabase getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ScanDatabase.class) {
+                if (instance == null) {
+                    instance = Room.databaseBuilder(context.getApplicationContext(), ScanDatabase.class, "scans.db")
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3)
+                            .build();
+                }
+            }
+        }
+        return instance;
+    }
+}
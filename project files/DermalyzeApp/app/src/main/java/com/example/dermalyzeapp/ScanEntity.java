@@ -0,0 +1,65 @@
+package com.example.dermalyzeapp;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+import com.google.firebase.Timestamp;
+
+/**
+ * A scan as stored on the device. Rows are written here first and marked
+ * {@link #SYNC_PENDING} until {@link ScanSyncWorker} has copied them to Firestore.
+ */
+@Entity(tableName = "scans",
+        primaryKeys = {"userId", "id"},
+        indices = {
+                @Index(value = {"userId", "timestampSeconds", "timestampNanos"}),
+                @Index(value = {"userId", "condition"}),
+                @Index(value = {"syncState"})
+        })
+public class ScanEntity {
+    public static final int SYNC_DONE = 0;
+    public static final int SYNC_PENDING = 1;
+
+    @NonNull
+    public String userId = "";
+    @NonNull
+    public String id = "";
+    public String imagePath;
+    public String condition;
+    @ColumnInfo(defaultValue = "-1")
+    public int conditionIndex = -1;
+    public double confidence;
+    public long timestampSeconds;
+    public int timestampNanos;
+    public String recommendations;
+    public String thumbnailPath;
+    public int syncState;
+
+    public static ScanEntity from(String userId, ScanResult scan, int syncState) {
+        ScanEntity entity = new ScanEntity();
+        entity.userId = userId;
+        entity.id = scan.getId();
+        entity.imagePath = scan.getImageUrl();
+        entity.condition = scan.getCondition();
+        entity.conditionIndex = scan.getConditionIndex();
+        entity.confidence = scan.getConfidence();
+        if (scan.getTimestamp() != null) {
+            entity.timestampSeconds = scan.getTimestamp().getSeconds();
+            entity.timestampNanos = scan.getTimestamp().getNanoseconds();
+        }
+        entity.recommendations = scan.getRecommendations();
+        entity.thumbnailPath = scan.getThumbnailPath();
+        entity.syncState = syncState;
+        return entity;
+    }
+
+    public ScanResult toScanResult() {
+        ScanResult scan = new ScanResult(id, imagePath, condition, confidence,
+                new Timestamp(timestampSeconds, timestampNanos), recommendations);
+        scan.setThumbnailPath(thumbnailPath);
+        scan.setConditionIndex(conditionIndex);
+        return scan;
+    }
+}
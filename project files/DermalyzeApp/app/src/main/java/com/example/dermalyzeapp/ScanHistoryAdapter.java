@@ -1,33 +1,72 @@
 package com.example.dermalyzeapp;
 
-import android.util.Log;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.example.dermalyzeapp.databinding.ItemScanHistoryBinding;
 
-import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.List;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Scan rows for the home and history screens.
+ *
+ * Callers hand over a new list with {@link #submitList}; the difference to the current list
+ * is computed off the main thread and only changed rows are rebound. Rows show the scan's
+ * thumbnail; scans without one (older ones, or ones synced from another device) are sampled
+ * down from the full image once and served from Glide's disk cache after that.
+ *
+ * Binding a row does not format anything: the date and confidence labels are built once per
+ * {@link ScanResult}, the click listeners are attached and the image requests configured when
+ * the row is created, and row ids are a hash of the scan id.
+ */
+public class ScanHistoryAdapter extends ListAdapter<ScanResult, ScanHistoryAdapter.ViewHolder> {
+    static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm", Locale.getDefault()).withZone(ZoneId.systemDefault());
 
-public class ScanHistoryAdapter extends RecyclerView.Adapter<ScanHistoryAdapter.ViewHolder> {
-    private final List<ScanResult> scanResults;
     private final OnItemClickListener listener;
-    private final SimpleDateFormat dateFormat;
+
+    private static final DiffUtil.ItemCallback<ScanResult> DIFF_CALLBACK = new DiffUtil.ItemCallback<ScanResult>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ScanResult oldItem, @NonNull ScanResult newItem) {
+            return Objects.equals(oldItem.getId(), newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ScanResult oldItem, @NonNull ScanResult newItem) {
+            return Objects.equals(oldItem.getCondition(), newItem.getCondition())
+                    && oldItem.getConfidence() == newItem.getConfidence()
+                    && Objects.equals(oldItem.getTimestamp(), newItem.getTimestamp())
+                    && Objects.equals(oldItem.getImageUrl(), newItem.getImageUrl())
+                    && Objects.equals(oldItem.getThumbnailPath(), newItem.getThumbnailPath());
+        }
+    };
 
     public interface OnItemClickListener {
         void onItemClick(ScanResult result);
     }
 
-    public ScanHistoryAdapter(List<ScanResult> scanResults, OnItemClickListener listener) {
-        this.scanResults = scanResults;
+    public ScanHistoryAdapter(OnItemClickListener listener) {
+        super(DIFF_CALLBACK);
         this.listener = listener;
-        this.dateFormat = new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.getDefault());
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).stableId();
     }
 
     @NonNull
@@ -35,61 +74,61 @@ public class ScanHistoryAdapter extends RecyclerView.Adapter<ScanHistoryAdapter.
     public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         ItemScanHistoryBinding binding = ItemScanHistoryBinding.inflate(
                 LayoutInflater.from(parent.getContext()), parent, false);
-        return new ViewHolder(binding);
+        ViewHolder holder = new ViewHolder(binding);
+        View.OnClickListener onClick = v -> {
+            int position = holder.getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                listener.onItemClick(getItem(position));
+            }
+        };
+        binding.getRoot().setOnClickListener(onClick);
+        binding.viewReportButton.setOnClickListener(onClick);
+        return holder;
     }
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        ScanResult result = scanResults.get(position);
-        holder.bind(result, listener);
-    }
-
-    @Override
-    public int getItemCount() {
-        return scanResults.size();
+        holder.bind(getItem(position));
     }
 
     static class ViewHolder extends RecyclerView.ViewHolder {
         private final ItemScanHistoryBinding binding;
+        // Configured once per row; a bind only sets the model. Glide builds the request in into(),
+        // so reusing the builders for the next bind does not affect a load already started
+        private final RequestBuilder<Drawable> thumbnailRequest;
+        private final RequestBuilder<Drawable> fullImageRequest;
 
         ViewHolder(ItemScanHistoryBinding binding) {
             super(binding.getRoot());
             this.binding = binding;
+            thumbnailRequest = Glide.with(binding.scanImageView)
+                    .asDrawable()
+                    // Already small and on disk; caching it again would only duplicate it
+                    .diskCacheStrategy(DiskCacheStrategy.NONE)
+                    .centerCrop();
+            // Keyed by the image path, which already names the scan
+            fullImageRequest = Glide.with(binding.scanImageView)
+                    .asDrawable()
+                    .override(ScanThumbnails.SIZE)
+                    .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+                    .centerCrop()
+                    .error(R.drawable.ic_error_image);
         }
 
-        void bind(ScanResult result, OnItemClickListener listener) {
+        void bind(ScanResult result) {
             binding.conditionTextView.setText(result.getCondition());
-            binding.confidenceTextView.setText(
-                    String.format(Locale.US, "Confidence: %.1f%%", result.getConfidence() * 100));
-            binding.dateTextView.setText(new SimpleDateFormat("MMM dd, yyyy HH:mm", Locale.getDefault())
-                    .format(result.getTimestamp().toDate()));
-
-            // Load image using Glide
-            String imagePath = result.getImageUrl();
-            if (imagePath != null) {
-                try {
-                    File imageFile = new File(imagePath);
-                    if (imageFile.exists()) {
-                        Glide.with(binding.scanImageView.getContext())
-                                .load(imageFile)
-                                .centerCrop()
-                                .error(R.drawable.ic_error_image) // Add this drawable to your resources
-                                .into(binding.scanImageView);
-                    } else {
-                        Log.e("ScanHistoryAdapter", "Image file does not exist: " + imagePath);
-                        binding.scanImageView.setImageResource(R.drawable.ic_error_image);
-                    }
-                } catch (Exception e) {
-                    Log.e("ScanHistoryAdapter", "Error loading image: " + imagePath, e);
-                    binding.scanImageView.setImageResource(R.drawable.ic_error_image);
-                }
+            binding.confidenceTextView.setText(result.confidenceLabel());
+            binding.dateTextView.setText(result.dateLabel(DATE_FORMAT));
+
+            // Missing files end up in Glide's error chain, so nothing here touches the disk
+            RequestBuilder<Drawable> fullImage = fullImageRequest.load(result.getImageUrl());
+            if (result.getThumbnailPath() != null) {
+                thumbnailRequest.load(result.getThumbnailPath())
+                        .error(fullImage)
+                        .into(binding.scanImageView);
             } else {
-                binding.scanImageView.setImageResource(R.drawable.ic_error_image);
+                fullImage.into(binding.scanImageView);
             }
-
-            // Set click listeners
-            binding.getRoot().setOnClickListener(v -> listener.onItemClick(result));
-            binding.viewReportButton.setOnClickListener(v -> listener.onItemClick(result));
         }
     }
 } 
\ No newline at end of file
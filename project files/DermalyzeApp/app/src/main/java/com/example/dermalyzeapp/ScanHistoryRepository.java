@@ -0,0 +1,55 @@
+package com.example.dermalyzeapp;
+
+import java.util.List;
+
+/**
+ * Source of a user's scan history, newest first, shared by the home and history screens.
+ *
+ * Observers are told about every change for as long as they are subscribed; the list they
+ * receive covers the window loaded so far, which {@link #loadMore} grows by a page.
+ */
+public interface ScanHistoryRepository {
+    int PAGE_SIZE = 20;
+
+    interface Observer {
+        void onScansChanged(List<ScanResult> scans);
+
+        void onError(Exception e);
+    }
+
+    interface Subscription {
+        void remove();
+    }
+
+    interface SaveCallback {
+        void onSaved();
+
+        void onError(Exception e);
+    }
+
+    /**
+     * Subscribes {@code observer} to {@code userId}'s history. The current list is delivered
+     * right away if it has already been loaded.
+     */
+    Subscription observe(String userId, Observer observer);
+
+    void loadMore(String userId);
+
+    boolean hasMore(String userId);
+
+    /**
+     * Every scan of {@code userId}, oldest first, e.g. for a history export. Blocks; call it
+     * off the main thread.
+     */
+    List<ScanResult> loadAll(String userId);
+
+    /**
+     * Stores {@code scans} for {@code userId}; observers see them once saved.
+     */
+    void save(String userId, List<ScanResult> scans, SaveCallback callback);
+
+    /**
+     * Drops every cached history, e.g. on sign-out.
+     */
+    void clear();
+}
@@ -0,0 +1,278 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A scanned image decoded once and shared by everything a diagnosis needs.
+ *
+ * The encoded bytes are read a single time; from them we keep a downsampled, correctly
+ * oriented bitmap for display and reports, and a subsampled bitmap just above
+ * {@link SkinClassifierEngine#IMAGE_SIZE} for the model. The original bytes are kept for
+ * persistence so the saved file does not need to be re-encoded. Call {@link #recycle()} once
+ * the screen is done.
+ */
+public final class ScanImage {
+    static final int DISPLAY_MAX_SIZE = 1280;
+
+    private final Uri sourceUri;
+    // False when the original bytes would show sideways, e.g. a capture without EXIF rotation
+    private final boolean originalUpright;
+    private byte[] originalBytes;
+    private Bitmap displayBitmap;
+    private Bitmap modelInput;
+
+    private ScanImage(Uri sourceUri, boolean originalUpright, byte[] originalBytes, Bitmap displayBitmap,
+                      Bitmap modelInput) {
+        this.sourceUri = sourceUri;
+        this.originalUpright = originalUpright;
+        this.originalBytes = originalBytes;
+        this.displayBitmap = displayBitmap;
+        this.modelInput = modelInput;
+    }
+
+    public static ScanImage decode(Context context, Uri uri) throws IOException {
+        return decode(uri, readBytes(context, uri), true);
+    }
+
+    /**
+     * Decodes {@code bytes} already read from {@code uri}. Without {@code withModelInput} only
+     * the display bitmap is decoded and {@link #getModelInput()} returns null, e.g. when the
+     * result came from {@link InferenceResultCache}.
+     */
+    static ScanImage decode(Uri uri, byte[] bytes, boolean withModelInput) throws IOException {
+        return decode(uri, bytes, readOrientation(bytes), true, withModelInput);
+    }
+
+    /**
+     * Decodes a JPEG the camera captured into memory. CameraX normally records the rotation in
+     * the JPEG's EXIF; on devices where it does not, {@code rotationDegrees} from the capture's
+     * image info is applied instead.
+     */
+    static ScanImage decodeCapture(byte[] jpeg, int rotationDegrees, boolean withModelInput) throws IOException {
+        int orientation = readOrientation(jpeg);
+        boolean upright = true;
+        if (orientation == ExifInterface.ORIENTATION_NORMAL || orientation == ExifInterface.ORIENTATION_UNDEFINED) {
+            orientation = orientationForDegrees(rotationDegrees);
+            upright = orientation == ExifInterface.ORIENTATION_NORMAL;
+        }
+        return decode(null, jpeg, orientation, upright, withModelInput);
+    }
+
+    private static ScanImage decode(Uri uri, byte[] bytes, int orientation, boolean upright, boolean withModelInput)
+            throws IOException {
+        ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.DECODE);
+        try {
+            Bitmap display = applyOrientation(
+                    SampledBitmapDecoder.decodeForDisplay(bytes, DISPLAY_MAX_SIZE), orientation);
+            // Decoded separately at a much higher sample size; the classifier does the final resize
+            Bitmap modelInput = withModelInput
+                    ? applyOrientation(SampledBitmapDecoder.decodeForModelInput(bytes, false, null), orientation)
+                    : null;
+            return new ScanImage(uri, upright, bytes, display, modelInput);
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Decodes only the model input of {@code bytes}, for batches where no display bitmap is
+     * needed. {@code reuse} is passed on as the decoder's {@code inBitmap}.
+     */
+    public static Bitmap decodeModelInput(byte[] bytes, Bitmap reuse) throws IOException {
+        ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.DECODE);
+        try {
+            return applyOrientation(SampledBitmapDecoder.decodeForModelInput(bytes, false, reuse),
+                    readOrientation(bytes));
+        } finally {
+            span.end();
+        }
+    }
+
+    /**
+     * Decodes {@code bytes} with the longest side just above {@code maxSize}, turned upright
+     * according to its EXIF orientation.
+     */
+    static Bitmap decodeOriented(byte[] bytes, int maxSize) throws IOException {
+        return applyOrientation(SampledBitmapDecoder.decodeForDisplay(bytes, maxSize), readOrientation(bytes));
+    }
+
+    /**
+     * Decodes {@code uri} straight from its stream with the longest side just above
+     * {@code maxSize}, turned upright. Used where the full encoded image is not needed.
+     */
+    static Bitmap decodeOriented(Context context, Uri uri, int maxSize) throws IOException {
+        SampledBitmapDecoder.StreamSource source = () -> {
+            InputStream in = context.getContentResolver().openInputStream(uri);
+            if (in == null) {
+                throw new IOException("Could not open image: " + uri);
+            }
+            return in;
+        };
+        int orientation;
+        try (InputStream in = source.open()) {
+            orientation = new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            orientation = ExifInterface.ORIENTATION_NORMAL;
+        }
+        return applyOrientation(SampledBitmapDecoder.decodeForDisplay(source, maxSize), orientation);
+    }
+
+    static byte[] readBytes(Context context, Uri uri) throws IOException {
+        try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+            if (in == null) {
+                throw new IOException("Could not open image: " + uri);
+            }
+            return readFully(in);
+        }
+    }
+
+    private static int readOrientation(byte[] bytes) {
+        try {
+            ExifInterface exif = new ExifInterface(new ByteArrayInputStream(bytes));
+            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private static int orientationForDegrees(int degrees) {
+        switch (degrees) {
+            case 90:
+                return ExifInterface.ORIENTATION_ROTATE_90;
+            case 180:
+                return ExifInterface.ORIENTATION_ROTATE_180;
+            case 270:
+                return ExifInterface.ORIENTATION_ROTATE_270;
+            default:
+                return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private static Bitmap applyOrientation(Bitmap bitmap, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return bitmap;
+        }
+        Bitmap oriented = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (oriented != bitmap) {
+            bitmap.recycle();
+        }
+        return oriented;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), 8192));
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    public Uri getSourceUri() {
+        return sourceUri;
+    }
+
+    /**
+     * Whether the original bytes show the right way up on their own; if not, they have to be
+     * re-encoded from the display bitmap before they are stored.
+     */
+    public boolean isOriginalUpright() {
+        return originalUpright;
+    }
+
+    public synchronized boolean isJpeg() {
+        return isJpeg(originalBytes);
+    }
+
+    static boolean isJpeg(byte[] bytes) {
+        // JPEG files start with the SOI marker followed by another marker
+        return bytes != null && bytes.length > 3
+                && (bytes[0] & 0xFF) == 0xFF
+                && (bytes[1] & 0xFF) == 0xD8
+                && (bytes[2] & 0xFF) == 0xFF;
+    }
+
+    public synchronized byte[] getOriginalBytes() {
+        return originalBytes;
+    }
+
+    public synchronized Bitmap getDisplayBitmap() {
+        return displayBitmap;
+    }
+
+    /**
+     * Writes the display bitmap as a JPEG; safe to call from another thread until {@link #recycle()}.
+     */
+    public synchronized void writeDisplayJpeg(OutputStream out, int quality) throws IOException {
+        if (displayBitmap == null) {
+            throw new IOException("Image has been released");
+        }
+        if (!displayBitmap.compress(Bitmap.CompressFormat.JPEG, quality, out)) {
+            throw new IOException("Failed to compress image");
+        }
+    }
+
+    /**
+     * Writes a thumbnail of the display bitmap, see {@link ScanThumbnails}.
+     */
+    public synchronized void writeThumbnail(File target) throws IOException {
+        if (displayBitmap == null) {
+            throw new IOException("Image has been released");
+        }
+        ScanThumbnails.write(displayBitmap, target);
+    }
+
+    public synchronized Bitmap getModelInput() {
+        return modelInput;
+    }
+
+    public synchronized void recycle() {
+        if (modelInput != null && modelInput != displayBitmap) {
+            modelInput.recycle();
+        }
+        if (displayBitmap != null) {
+            displayBitmap.recycle();
+        }
+        modelInput = null;
+        displayBitmap = null;
+        originalBytes = null;
+    }
+}
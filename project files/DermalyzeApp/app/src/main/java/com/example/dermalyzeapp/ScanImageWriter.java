@@ -0,0 +1,186 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Writes scan images into the scans folder on a dedicated I/O thread.
+ *
+ * An image that already is a reasonably sized JPEG is copied byte for byte, straight from
+ * the source file with {@link FileChannel#transferFrom} when it has one. Anything else is
+ * handed to the caller's {@link Encoder}; see {@link #needsReencode}. A thumbnail for the
+ * history list is written alongside, see {@link ScanThumbnails}.
+ */
+public final class ScanImageWriter {
+    private static final String TAG = "ScanImageWriter";
+    // Larger originals are re-encoded from the display-sized bitmap
+    static final long MAX_STORED_BYTES = 8L * 1024 * 1024;
+
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "dermalyze-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /**
+     * Writes a new encoding of the image, e.g. a JPEG of the display bitmap.
+     */
+    public interface Encoder {
+        void encode(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes the thumbnail of the image to the given file.
+     */
+    public interface Thumbnailer {
+        void writeThumbnail(File target) throws IOException;
+    }
+
+    /**
+     * The files written for one scan. {@link #thumbnail} is null when it could not be made;
+     * the list then falls back to the full image.
+     */
+    public static final class SavedImage {
+        public final File image;
+        public final File thumbnail;
+
+        SavedImage(File image, File thumbnail) {
+            this.image = image;
+            this.thumbnail = thumbnail;
+        }
+    }
+
+    private ScanImageWriter() {
+    }
+
+    /**
+     * Whether an image is stored re-encoded rather than as its original bytes.
+     */
+    static boolean needsReencode(boolean jpeg, long length) {
+        return !jpeg || length > MAX_STORED_BYTES;
+    }
+
+    /**
+     * Writes {@code bytes}, the encoded image read from {@code source}, to {@code target} on the
+     * I/O thread and reports back on the main thread. {@code source} is null for images that
+     * only exist in memory, such as camera captures. With {@code forceReencode} the encoder is
+     * used even when the original bytes could be stored as they are.
+     */
+    public static void writeAsync(Context context, Uri source, byte[] bytes, boolean forceReencode, Encoder encoder,
+                                  Thumbnailer thumbnailer, File target, InferenceExecutor.Callback<SavedImage> callback) {
+        Context appContext = context.getApplicationContext();
+        IO_EXECUTOR.execute(() -> {
+            try {
+                SavedImage saved = write(appContext, source, bytes, forceReencode, encoder, thumbnailer, target);
+                MAIN_HANDLER.post(() -> callback.onResult(saved));
+            } catch (IOException | RuntimeException e) {
+                Log.e(TAG, "Failed to write " + target, e);
+                target.delete();
+                MAIN_HANDLER.post(() -> callback.onError(e));
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #writeAsync} on the calling thread, for callers already off the main thread.
+     */
+    public static SavedImage write(Context context, Uri source, byte[] bytes, Encoder encoder,
+                                   Thumbnailer thumbnailer, File target) throws IOException {
+        return write(context, source, bytes, false, encoder, thumbnailer, target);
+    }
+
+    private static SavedImage write(Context context, Uri source, byte[] bytes, boolean forceReencode, Encoder encoder,
+                                    Thumbnailer thumbnailer, File target) throws IOException {
+        File storageDir = target.getParentFile();
+        if (storageDir != null && !storageDir.exists() && !storageDir.mkdirs()) {
+            throw new IOException("Failed to create storage directory");
+        }
+
+        ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.JPEG_WRITE);
+        try (FileOutputStream out = new FileOutputStream(target)) {
+            if (forceReencode || needsReencode(ScanImage.isJpeg(bytes), bytes.length)) {
+                encoder.encode(out);
+            } else {
+                copy(context, source, bytes, out.getChannel());
+            }
+        } finally {
+            span.end();
+        }
+        if (target.length() == 0) {
+            throw new IOException("Failed to save image file");
+        }
+
+        File thumbnail = ScanThumbnails.fileFor(target);
+        try {
+            thumbnailer.writeThumbnail(thumbnail);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to write thumbnail for " + target, e);
+            thumbnail.delete();
+            thumbnail = null;
+        }
+        return new SavedImage(target, thumbnail);
+    }
+
+    private static void copy(Context context, Uri source, byte[] bytes, FileChannel target) throws IOException {
+        ParcelFileDescriptor descriptor = null;
+        if (source != null) {
+            try {
+                descriptor = context.getContentResolver().openFileDescriptor(source, "r");
+            } catch (FileNotFoundException | SecurityException e) {
+                Log.d(TAG, "No file descriptor for " + source + ", writing from memory");
+            }
+        }
+        if (descriptor != null) {
+            try (FileInputStream in = new FileInputStream(descriptor.getFileDescriptor())) {
+                FileChannel channel = in.getChannel();
+                // A pipe, or a file changed since it was diagnosed, falls through to the bytes we have
+                if (channel.size() == bytes.length && transfer(channel, target, bytes.length)) {
+                    return;
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Channel copy failed for " + source + ", writing from memory", e);
+            } finally {
+                descriptor.close();
+            }
+            target.truncate(0);
+            target.position(0);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private static boolean transfer(FileChannel source, FileChannel target, long size) throws IOException {
+        long position = 0;
+        while (position < size) {
+            long moved = target.transferFrom(source, position, size - position);
+            if (moved <= 0) {
+                return false;
+            }
+            position += moved;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and allocation figures for every stage of the scan pipeline.
+ *
+ * Wrap a stage in {@link #begin} and {@link Span#end()} on the same thread:
+ * <pre>
+ * ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.DECODE);
+ * try {
+ *     ...
+ * } finally {
+ *     span.end();
+ * }
+ * </pre>
+ * Each span is also a {@link Trace} section named after its stage, so it shows up in
+ * Perfetto and systrace captures. Latencies go into one {@link LatencyHistogram} per stage;
+ * allocations are read from the runtime's process-wide counter, so a stage running next to
+ * other work is charged for that work too. {@link #writeJson} dumps everything to a file.
+ */
+public final class ScanMetrics {
+    private static final String ALLOCATED_BYTES_STAT = "art.gc.bytes-allocated";
+
+    public enum Stage {
+        DECODE("decode"),
+        QUALITY_GATE("quality_gate"),
+        PREPROCESS("preprocess"),
+        INFERENCE("inference"),
+        POSTPROCESS("postprocess"),
+        JPEG_WRITE("jpeg_write"),
+        DATABASE_WRITE("database_write"),
+        FIRESTORE_WRITE("firestore_write"),
+        PDF_BUILD("pdf_build"),
+        // A live camera preview frame, preprocessing and inference together; kept apart so
+        // preview frames do not skew the per-scan stages
+        PRESCREEN("prescreen");
+
+        final String key;
+        final String traceName;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong allocatedBytes = new AtomicLong();
+
+        Stage(String key) {
+            this.key = key;
+            this.traceName = "Dermalyze:" + key;
+        }
+    }
+
+    /**
+     * One timed run of a stage. Not reusable; end it exactly once, on the thread that began it.
+     */
+    public static final class Span {
+        private final Stage stage;
+        private final long startNanos;
+        private final long startAllocated;
+
+        private Span(Stage stage) {
+            this.stage = stage;
+            this.startAllocated = allocatedBytes();
+            Trace.beginSection(stage.traceName);
+            this.startNanos = SystemClock.elapsedRealtimeNanos();
+        }
+
+        public void end() {
+            long elapsed = SystemClock.elapsedRealtimeNanos() - startNanos;
+            Trace.endSection();
+            stage.latency.record(elapsed / 1000);
+            long allocated = allocatedBytes() - startAllocated;
+            if (allocated > 0) {
+                stage.allocatedBytes.addAndGet(allocated);
+            }
+        }
+    }
+
+    private ScanMetrics() {
+    }
+
+    public static Span begin(Stage stage) {
+        return new Span(stage);
+    }
+
+    public static void reset() {
+        for (Stage stage : Stage.values()) {
+            stage.latency.reset();
+            stage.allocatedBytes.set(0);
+        }
+    }
+
+    private static long allocatedBytes() {
+        String value = Debug.getRuntimeStat(ALLOCATED_BYTES_STAT);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Writes the current figures of every stage, plus the result cache counters, as JSON.
+     * Latencies are in milliseconds.
+     */
+    public static void writeJson(Context context, File file) throws IOException {
+        InferenceResultCache cache = InferenceResultCache.getInstance(context);
+        try (JsonWriter json = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)))) {
+            json.setIndent("  ");
+            json.beginObject();
+            json.name("device").value(Build.MANUFACTURER + " " + Build.MODEL);
+            json.name("sdk").value(Build.VERSION.SDK_INT);
+            json.name("uptimeMs").value(SystemClock.elapsedRealtime());
+
+            json.name("stages").beginObject();
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram latency = stage.latency;
+                long count = latency.getCount();
+                json.name(stage.key).beginObject();
+                json.name("count").value(count);
+                json.name("meanMs").value(latency.getMean() / 1000);
+                json.name("minMs").value(latency.getMin() / 1000.0);
+                json.name("p50Ms").value(latency.getValueAtPercentile(50) / 1000.0);
+                json.name("p90Ms").value(latency.getValueAtPercentile(90) / 1000.0);
+                json.name("p95Ms").value(latency.getValueAtPercentile(95) / 1000.0);
+                json.name("p99Ms").value(latency.getValueAtPercentile(99) / 1000.0);
+                json.name("maxMs").value(latency.getMax() / 1000.0);
+                json.name("allocatedBytes").value(stage.allocatedBytes.get());
+                json.name("allocatedBytesPerRun").value(count == 0 ? 0 : stage.allocatedBytes.get() / count);
+                json.endObject();
+            }
+            json.endObject();
+
+            json.name("resultCache").beginObject();
+            json.name("memoryHits").value(cache.getMemoryHitCount());
+            json.name("diskHits").value(cache.getDiskHitCount());
+            json.name("misses").value(cache.getMissCount());
+            json.endObject();
+            json.endObject();
+        }
+    }
+}
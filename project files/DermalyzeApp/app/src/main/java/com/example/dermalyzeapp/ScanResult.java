@@ -3,6 +3,11 @@ package com.example.dermalyzeapp;
 import android.os.Parcel;
 import android.os.Parcelable;
 import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.ServerTimestamp;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 
 public class ScanResult implements Parcelable {
     private String id;
@@ -11,6 +16,16 @@ public class ScanResult implements Parcelable {
     private double confidence;
     private Timestamp timestamp;
     private String recommendations;
+    private String thumbnailPath;
+    // Position in SkinConditions.NAMES; -1 for scans saved before it was stored
+    private int conditionIndex = -1;
+    // Set by Firestore whenever the scan is uploaded; only used to pull changes, not stored locally
+    @ServerTimestamp
+    private Timestamp updatedAt;
+
+    // Row labels for the history list, built on first bind; not stored or parcelled
+    private transient String dateLabel;
+    private transient String confidenceLabel;
 
     public ScanResult() {
         // Required empty constructor for Firestore
@@ -32,6 +47,8 @@ public class ScanResult implements Parcelable {
         confidence = in.readDouble();
         timestamp = new Timestamp(in.readLong(), 0);
         recommendations = in.readString();
+        thumbnailPath = in.readString();
+        conditionIndex = in.readInt();
     }
 
     @Override
@@ -42,6 +59,40 @@ public class ScanResult implements Parcelable {
         dest.writeDouble(confidence);
         dest.writeLong(timestamp.getSeconds());
         dest.writeString(recommendations);
+        dest.writeString(thumbnailPath);
+        dest.writeInt(conditionIndex);
+    }
+
+    String dateLabel(DateTimeFormatter formatter) {
+        if (dateLabel == null) {
+            dateLabel = timestamp != null
+                    ? formatter.format(Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanoseconds()))
+                    : "";
+        }
+        return dateLabel;
+    }
+
+    String confidenceLabel() {
+        if (confidenceLabel == null) {
+            confidenceLabel = String.format(Locale.US, "Confidence: %.1f%%", confidence * 100);
+        }
+        return confidenceLabel;
+    }
+
+    /**
+     * A 64-bit FNV-1a hash of the id, for list adapters that need a numeric id per row. Equal
+     * ids give equal values, so it stays the same across reloads without a lookup table.
+     */
+    long stableId() {
+        long hash = 0xcbf29ce484222325L;
+        if (id != null) {
+            for (int i = 0; i < id.length(); i++) {
+                hash ^= id.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+        }
+        // -1 is RecyclerView.NO_ID
+        return hash == -1 ? 0 : hash;
     }
 
     @Override
@@ -85,12 +136,25 @@ public class ScanResult implements Parcelable {
         this.condition = condition;
     }
 
+    /**
+     * Index of {@link #getCondition()} in {@link SkinConditions#NAMES}, or -1 for a condition
+     * the app does not know.
+     */
+    public int getConditionIndex() {
+        return conditionIndex >= 0 ? conditionIndex : SkinConditions.find(condition);
+    }
+
+    public void setConditionIndex(int conditionIndex) {
+        this.conditionIndex = conditionIndex;
+    }
+
     public double getConfidence() {
         return confidence;
     }
 
     public void setConfidence(double confidence) {
         this.confidence = confidence;
+        this.confidenceLabel = null;
     }
 
     public Timestamp getTimestamp() {
@@ -99,6 +163,7 @@ public class ScanResult implements Parcelable {
 
     public void setTimestamp(Timestamp timestamp) {
         this.timestamp = timestamp;
+        this.dateLabel = null;
     }
 
     public String getRecommendations() {
@@ -108,4 +173,20 @@ public class ScanResult implements Parcelable {
     public void setRecommendations(String recommendations) {
         this.recommendations = recommendations;
     }
+
+    public Timestamp getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Timestamp updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+
+    public void setThumbnailPath(String thumbnailPath) {
+        this.thumbnailPath = thumbnailPath;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,214 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a user's pending scans to Firestore in batches, then pulls scans saved from other
+ * devices into the local store.
+ *
+ * Pulls follow the server-assigned {@code updatedAt} of each document rather than the time a
+ * scan was taken, so a scan another device took offline days ago is still picked up when it
+ * finally uploads. Runs only with a network connection and retries with exponential backoff,
+ * so a scan taken offline is uploaded whenever the device gets back online.
+ */
+public class ScanSyncWorker extends Worker {
+    private static final String TAG = "ScanSyncWorker";
+    private static final String KEY_USER_ID = "userId";
+    private static final String WORK_NAME_PREFIX = "scan-sync-";
+    // Firestore accepts at most 500 writes per batch
+    private static final int PUSH_BATCH_SIZE = 400;
+    private static final int PULL_PAGE_SIZE = 100;
+    private static final String PREFS_NAME = "scan_sync";
+    private static final String KEY_PULLED_SECONDS = "pulledUpToSeconds_";
+    private static final String KEY_PULLED_NANOS = "pulledUpToNanos_";
+    static final String FIELD_UPDATED_AT = "updatedAt";
+
+    public ScanSyncWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules a sync for {@code userId}; a sync requested while one is running runs after it.
+     */
+    public static void enqueue(Context context, String userId) {
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(ScanSyncWorker.class)
+                .setConstraints(new Constraints.Builder()
+                        .setRequiredNetworkType(NetworkType.CONNECTED)
+                        .build())
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, 30, TimeUnit.SECONDS)
+                .setInputData(new Data.Builder().putString(KEY_USER_ID, userId).build())
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(WORK_NAME_PREFIX + userId, ExistingWorkPolicy.APPEND_OR_REPLACE, request);
+    }
+
+    public static void cancel(Context context, String userId) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME_PREFIX + userId);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String userId = getInputData().getString(KEY_USER_ID);
+        if (userId == null) {
+            return Result.failure();
+        }
+
+        ScanDao dao = ScanDatabase.getInstance(getApplicationContext()).scanDao();
+        CollectionReference scans = FirebaseFirestore.getInstance()
+                .collection("users")
+                .document(userId)
+                .collection("scans");
+        SharedPreferences prefs = getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        try {
+            int pushed = push(dao, scans, userId);
+            int pulled = pull(dao, scans, userId, prefs);
+            Log.d(TAG, "Pushed " + pushed + " and pulled " + pulled + " scans");
+            return Result.success();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "Scan sync failed, will retry", e);
+            return Result.retry();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        }
+    }
+
+    private static int push(ScanDao dao, CollectionReference scans, String userId)
+            throws ExecutionException, InterruptedException {
+        int pushed = 0;
+        List<ScanEntity> pending;
+        while (!(pending = dao.pending(userId, PUSH_BATCH_SIZE)).isEmpty()) {
+            WriteBatch batch = scans.getFirestore().batch();
+            List<String> ids = new ArrayList<>();
+            for (ScanEntity entity : pending) {
+                // updatedAt is left null, so Firestore stamps it with the commit time
+                batch.set(scans.document(entity.id), entity.toScanResult());
+                ids.add(entity.id);
+            }
+            ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.FIRESTORE_WRITE);
+            try {
+                Tasks.await(batch.commit());
+            } finally {
+                span.end();
+            }
+            dao.markSynced(userId, ids);
+            pushed += ids.size();
+        }
+        return pushed;
+    }
+
+    /**
+     * Brings in every document updated since the last pull. The first pull on a device also
+     * copies documents written before {@code updatedAt} existed, which no query on it returns.
+     */
+    private static int pull(ScanDao dao, CollectionReference scans, String userId, SharedPreferences prefs)
+            throws ExecutionException, InterruptedException {
+        Timestamp pulledUpTo = readPulledUpTo(prefs, userId);
+        int pulled = 0;
+        if (pulledUpTo == null) {
+            // Taken before the full copy, so anything uploaded while it runs is pulled next time
+            QuerySnapshot latest = Tasks.await(scans.orderBy(FIELD_UPDATED_AT, Query.Direction.DESCENDING)
+                    .limit(1).get());
+            pulledUpTo = latest.isEmpty() ? new Timestamp(0, 0)
+                    : latest.getDocuments().get(0).getTimestamp(FIELD_UPDATED_AT);
+            pulled += pullAll(dao, scans.orderBy("timestamp", Query.Direction.ASCENDING), userId, null);
+            writePulledUpTo(prefs, userId, pulledUpTo);
+        }
+        Query changed = scans.whereGreaterThan(FIELD_UPDATED_AT, pulledUpTo)
+                .orderBy(FIELD_UPDATED_AT, Query.Direction.ASCENDING);
+        pulled += pullAll(dao, changed, userId, last -> {
+            Timestamp updatedAt = last.getTimestamp(FIELD_UPDATED_AT);
+            if (updatedAt != null) {
+                writePulledUpTo(prefs, userId, updatedAt);
+            }
+        });
+        return pulled;
+    }
+
+    private interface PageListener {
+        void onPageStored(DocumentSnapshot last);
+    }
+
+    private static int pullAll(ScanDao dao, Query query, String userId, PageListener listener)
+            throws ExecutionException, InterruptedException {
+        query = query.limit(PULL_PAGE_SIZE);
+        int pulled = 0;
+        QuerySnapshot page = Tasks.await(query.get());
+        while (!page.isEmpty()) {
+            List<ScanEntity> entities = new ArrayList<>();
+            for (QueryDocumentSnapshot document : page) {
+                try {
+                    ScanResult scan = document.toObject(ScanResult.class);
+                    scan.setId(document.getId());
+                    entities.add(ScanEntity.from(userId, scan, ScanEntity.SYNC_DONE));
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Error parsing scan result: " + document.getId(), e);
+                }
+            }
+            dao.insertIfAbsent(entities);
+            pulled += entities.size();
+            DocumentSnapshot last = page.getDocuments().get(page.size() - 1);
+            if (listener != null) {
+                // Stored page by page, so a retry after a failure resumes where this one stopped
+                listener.onPageStored(last);
+            }
+            if (page.size() < PULL_PAGE_SIZE) {
+                break;
+            }
+            page = Tasks.await(query.startAfter(last).get());
+        }
+        return pulled;
+    }
+
+    /**
+     * The {@code updatedAt} up to which {@code userId}'s scans have been pulled, or null before
+     * the first pull on this device.
+     */
+    static Timestamp pulledUpTo(Context context, String userId) {
+        return readPulledUpTo(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE), userId);
+    }
+
+    private static Timestamp readPulledUpTo(SharedPreferences prefs, String userId) {
+        if (!prefs.contains(KEY_PULLED_SECONDS + userId)) {
+            return null;
+        }
+        return new Timestamp(prefs.getLong(KEY_PULLED_SECONDS + userId, 0),
+                prefs.getInt(KEY_PULLED_NANOS + userId, 0));
+    }
+
+    private static void writePulledUpTo(SharedPreferences prefs, String userId, Timestamp timestamp) {
+        prefs.edit()
+                .putLong(KEY_PULLED_SECONDS + userId, timestamp.getSeconds())
+                .putInt(KEY_PULLED_NANOS + userId, timestamp.getNanoseconds())
+                .apply();
+    }
+}
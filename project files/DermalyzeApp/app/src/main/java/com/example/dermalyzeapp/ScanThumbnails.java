@@ -0,0 +1,58 @@
+package com.example.dermalyzeapp;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Small WebP copies of saved scans for the history rows, written next to the scan image.
+ *
+ * A thumbnail has its shorter side at {@link #SIZE} pixels and is already upright, so the
+ * list never has to decode the full photo or look at its EXIF data.
+ */
+public final class ScanThumbnails {
+    static final int SIZE = 256;
+    private static final int QUALITY = 80;
+
+    private ScanThumbnails() {
+    }
+
+    /**
+     * {@code scan_<id>.jpg} gets {@code scan_<id>_thumb.webp} in the same folder.
+     */
+    public static File fileFor(File imageFile) {
+        String name = imageFile.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return new File(imageFile.getParentFile(), base + "_thumb.webp");
+    }
+
+    /**
+     * Scales {@code source} down and writes it to {@code target}. Leaves {@code source} alone.
+     */
+    public static void write(Bitmap source, File target) throws IOException {
+        float scale = Math.min(1f, (float) SIZE / Math.min(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, Math.round(source.getWidth() * scale));
+        int height = Math.max(1, Math.round(source.getHeight() * scale));
+        Bitmap thumbnail = scale < 1f ? Bitmap.createScaledBitmap(source, width, height, true) : source;
+        try (FileOutputStream out = new FileOutputStream(target)) {
+            if (!thumbnail.compress(webpFormat(), QUALITY, out)) {
+                throw new IOException("Failed to compress thumbnail");
+            }
+        } finally {
+            if (thumbnail != source) {
+                thumbnail.recycle();
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+    }
+}
@@ -0,0 +1,378 @@
+package com.example.dermalyzeapp;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.support.common.FileUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process-wide owner of the skin classification model.
+ *
+ * The model file is mapped once and a small pool of warmed-up interpreters is kept alive
+ * for the whole application, so opening another diagnosis screen does not pay for model
+ * loading again. Callers hold the engine with {@link #acquire()} / {@link #release()} while
+ * they use it; the pool is only torn down when nobody holds the engine and the system asks
+ * the app to trim memory.
+ */
+public final class SkinClassifierEngine implements ComponentCallbacks2 {
+    private static final String TAG = "SkinClassifierEngine";
+    public static final int IMAGE_SIZE = 224;
+    public static final int NUM_CLASSES = 7;
+    private static final int POOL_SIZE = 2;
+    static final int MAX_BATCH_SIZE = 16;
+    private static final int[] SINGLE_INPUT_SHAPE = {1, IMAGE_SIZE, IMAGE_SIZE, 3};
+    // How often a caller waiting for a busy interpreter checks whether the pool was closed
+    private static final long POOL_POLL_MILLIS = 100;
+
+    private static volatile SkinClassifierEngine instance;
+
+    private final Context appContext;
+    private final List<PooledInterpreter> interpreters = new ArrayList<>();
+    private BlockingQueue<PooledInterpreter> idleInterpreters;
+    private MappedByteBuffer model;
+    private ModelVariant modelVariant;
+    private InferenceOptions inferenceOptions;
+    private int refCount = 0;
+
+    /**
+     * An interpreter together with the buffers it reads from and writes to.
+     */
+    private static final class PooledInterpreter {
+        final Interpreter interpreter;
+        final ImagePreprocessor preprocessor;
+
+        PooledInterpreter(Interpreter interpreter) {
+            this.interpreter = interpreter;
+            this.preprocessor = new ImagePreprocessor(interpreter.getInputTensor(0), interpreter.getOutputTensor(0));
+        }
+    }
+
+    /**
+     * Supplies the images of a batch one at a time, so a caller can decode each image into
+     * the same reusable bitmap instead of holding the whole batch in memory.
+     */
+    public interface BatchSource {
+        Bitmap get(int index) throws IOException;
+    }
+
+    private SkinClassifierEngine(Context appContext) {
+        this.appContext = appContext;
+    }
+
+    public static SkinClassifierEngine getInstance(Context context) throws IOException {
+        if (instance == null) {
+            synchronized (SkinClassifierEngine.class) {
+                if (instance == null) {
+                    SkinClassifierEngine engine = new SkinClassifierEngine(context.getApplicationContext());
+                    engine.ensureLoaded();
+                    engine.appContext.registerComponentCallbacks(engine);
+                    instance = engine;
+                }
+            }
+        }
+        instance.ensureLoaded();
+        return instance;
+    }
+
+    /**
+     * Loads the model in the background so the first diagnosis does not have to.
+     */
+    public static void preload(Context context) {
+        Context appContext = context.getApplicationContext();
+        InferenceExecutor.getBackgroundInstance().submit(() -> getInstance(appContext),
+                new InferenceExecutor.Callback<SkinClassifierEngine>() {
+                    @Override
+                    public void onResult(SkinClassifierEngine engine) {
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        Log.e(TAG, "Failed to preload classifier", e);
+                    }
+                });
+    }
+
+    private synchronized void ensureLoaded() throws IOException {
+        if (model != null) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        IOException lastError = null;
+        for (ModelVariant variant : ModelVariant.candidates(appContext)) {
+            try {
+                loadVariant(variant);
+                Log.d(TAG, "Loaded " + variant + " model with " + POOL_SIZE + " interpreters (" + inferenceOptions
+                        + ") in " + (System.currentTimeMillis() - start) + " ms");
+                return;
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Could not load " + variant + " model, trying the next one", e);
+                closeInterpreters();
+                lastError = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+        }
+        throw lastError != null ? lastError : new IOException("No model variant available");
+    }
+
+    private void loadVariant(ModelVariant variant) throws IOException {
+        MappedByteBuffer mapped = FileUtil.loadMappedFile(appContext, variant.getAssetPath());
+        InferenceOptions pinned = InferenceOptionsProbe.pinnedOrProbe(appContext, variant, mapped, POOL_SIZE);
+
+        RuntimeException lastError = null;
+        for (InferenceOptions options : pinned.fallbackChain(POOL_SIZE)) {
+            try {
+                createPool(mapped, options);
+                model = mapped;
+                modelVariant = variant;
+                inferenceOptions = options;
+                return;
+            } catch (RuntimeException e) {
+                // e.g. NNAPI failing to initialise on this device; retry on the CPU
+                Log.w(TAG, "Could not create interpreters with " + options, e);
+                closeInterpreters();
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    private void createPool(MappedByteBuffer mapped, InferenceOptions options) {
+        idleInterpreters = new ArrayBlockingQueue<>(POOL_SIZE);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            PooledInterpreter pooled = new PooledInterpreter(new Interpreter(mapped, options.toInterpreterOptions()));
+            interpreters.add(pooled);
+            // The first run allocates the interpreter's tensors; do it before a real scan
+            pooled.interpreter.run(pooled.preprocessor.getInputBuffer(), pooled.preprocessor.getOutput());
+            idleInterpreters.add(pooled);
+        }
+    }
+
+    public synchronized ModelVariant getModelVariant() {
+        return modelVariant;
+    }
+
+    public synchronized InferenceOptions getInferenceOptions() {
+        return inferenceOptions;
+    }
+
+    public synchronized void acquire() {
+        refCount++;
+    }
+
+    public synchronized void release() {
+        if (refCount > 0) {
+            refCount--;
+        }
+    }
+
+    /**
+     * Runs the model on the given bitmap and returns the probability of each of the
+     * {@link #NUM_CLASSES} skin conditions. Blocks while every pooled interpreter is busy.
+     */
+    public float[] classify(Bitmap bitmap) throws InterruptedException {
+        float[] probabilities = new float[NUM_CLASSES];
+        classify(bitmap, probabilities);
+        return probabilities;
+    }
+
+    /**
+     * Same as {@link #classify(Bitmap)} but writes into {@code probabilities}, so repeated
+     * calls do not allocate.
+     */
+    public void classify(Bitmap bitmap, float[] probabilities) throws InterruptedException {
+        classify(bitmap, probabilities, true);
+    }
+
+    /**
+     * Same as {@link #classify(Bitmap, float[])} for a live camera preview frame. The frame is
+     * timed as a whole under {@link ScanMetrics.Stage#PRESCREEN} instead of in the preprocess
+     * and inference stages, which describe diagnoses.
+     */
+    void classifyPreviewFrame(Bitmap bitmap, float[] probabilities) throws InterruptedException {
+        ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.PRESCREEN);
+        try {
+            classify(bitmap, probabilities, false);
+        } finally {
+            span.end();
+        }
+    }
+
+    private void classify(Bitmap bitmap, float[] probabilities, boolean timeStages) throws InterruptedException {
+        BlockingQueue<PooledInterpreter> pool = idleInterpreters();
+        PooledInterpreter pooled = take(pool);
+        try {
+            ScanMetrics.Span span = timeStages ? ScanMetrics.begin(ScanMetrics.Stage.PREPROCESS) : null;
+            ByteBuffer input;
+            try {
+                input = pooled.preprocessor.process(bitmap);
+            } finally {
+                if (span != null) {
+                    span.end();
+                }
+            }
+            span = timeStages ? ScanMetrics.begin(ScanMetrics.Stage.INFERENCE) : null;
+            try {
+                pooled.interpreter.run(input, pooled.preprocessor.getOutput());
+            } finally {
+                if (span != null) {
+                    span.end();
+                }
+            }
+            pooled.preprocessor.readOutput(probabilities);
+        } finally {
+            pool.offer(pooled);
+        }
+    }
+
+    /**
+     * Classifies {@code bitmaps} with one interpreter invocation per {@value #MAX_BATCH_SIZE}
+     * images and returns the probabilities of each, in order.
+     */
+    public float[][] classifyBatch(List<Bitmap> bitmaps) throws IOException, InterruptedException {
+        return classifyBatch(bitmaps.size(), bitmaps::get);
+    }
+
+    /**
+     * Batched form of {@link #classify(Bitmap)}. The interpreter input is resized to
+     * {@code [n, 224, 224, 3]}, filled image by image from {@code source} and run once per
+     * chunk of up to {@value #MAX_BATCH_SIZE} images. The interpreter goes back to the pool
+     * resized to a single image.
+     */
+    public float[][] classifyBatch(int count, BatchSource source) throws IOException, InterruptedException {
+        BlockingQueue<PooledInterpreter> pool = idleInterpreters();
+        float[][] results = new float[count][NUM_CLASSES];
+        PooledInterpreter pooled = take(pool);
+        try {
+            for (int offset = 0; offset < count; offset += MAX_BATCH_SIZE) {
+                int size = Math.min(MAX_BATCH_SIZE, count - offset);
+                runBatch(pooled, source, offset, size, results);
+            }
+        } finally {
+            pooled.interpreter.resizeInput(0, SINGLE_INPUT_SHAPE);
+            pooled.interpreter.allocateTensors();
+            pool.offer(pooled);
+        }
+        return results;
+    }
+
+    private synchronized BlockingQueue<PooledInterpreter> idleInterpreters() {
+        if (model == null) {
+            throw new IllegalStateException("Classifier engine has been closed");
+        }
+        return idleInterpreters;
+    }
+
+    /**
+     * Waits for an idle interpreter in {@code pool}. A caller that did not {@link #acquire()}
+     * the engine can see the pool closed under it while it waits; it then fails instead of
+     * blocking forever on a queue nothing will be returned to.
+     */
+    private PooledInterpreter take(BlockingQueue<PooledInterpreter> pool) throws InterruptedException {
+        while (true) {
+            PooledInterpreter pooled = pool.poll(POOL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (pooled != null) {
+                return pooled;
+            }
+            synchronized (this) {
+                if (model == null || idleInterpreters != pool) {
+                    throw new IllegalStateException("Classifier engine has been closed");
+                }
+            }
+        }
+    }
+
+    private static void runBatch(PooledInterpreter pooled, BatchSource source, int offset, int size,
+                                 float[][] results) throws IOException {
+        ImagePreprocessor preprocessor = pooled.preprocessor;
+        pooled.interpreter.resizeInput(0, new int[]{size, IMAGE_SIZE, IMAGE_SIZE, 3});
+        pooled.interpreter.allocateTensors();
+
+        ByteBuffer input = ByteBuffer.allocateDirect(size * preprocessor.getInputBytesPerImage())
+                .order(ByteOrder.nativeOrder());
+        for (int i = 0; i < size; i++) {
+            Bitmap bitmap = source.get(offset + i);
+            ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.PREPROCESS);
+            try {
+                preprocessor.processInto(bitmap, input);
+            } finally {
+                span.end();
+            }
+        }
+        input.rewind();
+
+        Object output = preprocessor.createBatchOutput(size);
+        Map<Integer, Object> outputs = Collections.singletonMap(0, output);
+        ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.INFERENCE);
+        try {
+            pooled.interpreter.runForMultipleInputsOutputs(new Object[]{input}, outputs);
+        } finally {
+            span.end();
+        }
+        for (int i = 0; i < size; i++) {
+            preprocessor.readBatchOutput(output, i, results[offset + i]);
+        }
+    }
+
+    private synchronized void closeIfUnused() {
+        if (refCount > 0 || model == null) {
+            return;
+        }
+        // Only close once every interpreter is back in the pool. Draining takes them out of
+        // reach of a caller polling the pool without holding the engine; if one got there
+        // first, the rest go back and the pool stays open.
+        List<PooledInterpreter> idle = new ArrayList<>(interpreters.size());
+        idleInterpreters.drainTo(idle);
+        if (idle.size() != interpreters.size()) {
+            idleInterpreters.addAll(idle);
+            return;
+        }
+        closeInterpreters();
+        Log.d(TAG, "Released classifier engine");
+    }
+
+    private void closeInterpreters() {
+        for (PooledInterpreter pooled : interpreters) {
+            pooled.interpreter.close();
+        }
+        interpreters.clear();
+        if (idleInterpreters != null) {
+            idleInterpreters.clear();
+        }
+        model = null;
+        modelVariant = null;
+        inferenceOptions = null;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            closeIfUnused();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        closeIfUnused();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.dermalyzeapp;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The seven HAM10000 classes the model predicts, in output order, with the text shown for each.
+ */
+public final class SkinConditions {
+    public static final float PROBABILITY_THRESHOLD = 0.5f;
+
+    public static final String[] NAMES = {
+        "Actinic Keratoses / Bowen's Disease",
+        "Basal Cell Carcinoma",
+        "Benign Keratosis-like Lesions",
+        "Dermatofibroma",
+        "Melanoma",
+        "Melanocytic Nevi (moles)",
+        "Vascular Lesions"
+    };
+
+    // HAM10000 diagnosis codes, used as keys in config files
+    public static final String[] CODES = {"akiec", "bcc", "bkl", "df", "mel", "nv", "vasc"};
+
+    private static final Map<String, Integer> INDEX_BY_NAME = new HashMap<>();
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            INDEX_BY_NAME.put(NAMES[i], i);
+        }
+    }
+
+    public static final String[] DESCRIPTIONS = {
+        // akiec
+        "Actinic Keratoses are pre-cancerous skin growths that typically appear on sun-damaged skin. " +
+        "They often present as rough, scaly patches that can be pink, red, or flesh-colored. " +
+        "Bowen's Disease is an early form of skin cancer that appears as a persistent, scaly red patch.",
+
+        // bcc
+        "Basal Cell Carcinoma is the most common form of skin cancer. It typically appears as a " +
+        "pearly, waxy bump; a flat, flesh-colored or brown scar-like lesion; or a bleeding or " +
+        "scabbing sore that heals and returns. It's usually found on sun-exposed areas.",
+
+        // bkl
+        "Benign Keratosis-like Lesions are non-cancerous skin growths that often appear with age. " +
+        "They can be flat or slightly raised, with colors ranging from light tan to dark brown. " +
+        "These lesions are harmless but may resemble more serious conditions.",
+
+        // df
+        "Dermatofibroma is a common benign skin tumor that often appears as a firm, raised growth " +
+        "that can be pink, gray, red, or brown. They're usually round, relatively small, and may " +
+        "dimple when pressed from the sides.",
+
+        // mel
+        "Melanoma is the most dangerous form of skin cancer. It develops in melanocytes (pigment-producing cells) " +
+        "and often resembles moles. Key warning signs include asymmetry, irregular borders, color " +
+        "variations, diameter >6mm, and evolving size/shape/color.",
+
+        // nv
+        "Melanocytic Nevi (moles) are common, usually benign skin growths that develop from melanocytes. " +
+        "They can be flat or raised, round or oval, and range in color from pink to dark brown. " +
+        "While most are harmless, any changes should be monitored.",
+
+        // vasc
+        "Vascular Lesions are abnormalities of blood vessels appearing on or under the skin. " +
+        "They can appear as red, purple, or blue marks and may be flat or raised. Types include " +
+        "hemangiomas, port wine stains, and spider veins."
+    };
+
+    /**
+     * Index of the most probable class; ties go to the lower index.
+     */
+    public static int argmax(float[] probabilities) {
+        int maxIndex = 0;
+        for (int i = 1; i < probabilities.length; i++) {
+            if (probabilities[i] > probabilities[maxIndex]) {
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    /**
+     * Index of the class named {@code condition}, or -1 when it is not one of {@link #NAMES}.
+     */
+    public static int find(String condition) {
+        Integer index = condition != null ? INDEX_BY_NAME.get(condition) : null;
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Same as {@link #find}, but falls back to the first class for unknown names.
+     */
+    public static int indexOf(String condition) {
+        return Math.max(0, find(condition));
+    }
+
+    public static String recommendationsFor(String condition) {
+        switch (condition) {
+            case "Actinic Keratoses / Bowen's Disease":
+                return "ATTENTION: Actinic Keratoses detected, which may develop into skin cancer.\n\n" +
+                       "Recommended actions:\n" +
+                       "1. Schedule an appointment with a dermatologist\n" +
+                       "2. Protect the affected area from sun exposure\n" +
+                       "3. Use prescribed sunscreen regularly\n" +
+                       "4. Monitor for any changes in size or appearance\n\n" +
+                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
+
+            case "Basal Cell Carcinoma":
+                return "URGENT: The AI model suggests this may be Basal Cell Carcinoma, a type of skin cancer.\n\n" +
+                       "Recommended actions:\n" +
+                       "1. Schedule an immediate appointment with a dermatologist\n" +
+                       "2. Do not delay seeking professional medical attention\n" +
+                       "3. Bring this image and analysis to your appointment\n" +
+                       "4. Avoid sun exposure to the affected area\n\n" +
+                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
+
+            case "Benign Keratosis-like Lesions":
+                return "The AI model suggests these are benign (non-cancerous) growths.\n\n" +
+                       "Recommended actions:\n" +
+                       "1. Monitor the lesions for any changes\n" +
+                       "2. Schedule a routine check-up with a dermatologist\n" +
+                       "3. Protect your skin from sun damage\n" +
+                       "4. Document any changes in size or appearance\n\n" +
+                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
+
+            case "Dermatofibroma":
+                return "The AI model suggests this may be a Dermatofibroma, which is typically benign.\n\n" +
+                       "Recommended actions:\n" +
+                       "1. No immediate action required if stable\n" +
+                       "2. Monitor for any changes in size or color\n" +
+                       "3. Consider a routine dermatologist check-up\n" +
+                       "4. Document any changes or symptoms\n\n" +
+                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
+
+            case "Melanoma":
+                return "URGENT: The AI model suggests this may be Melanoma, a serious form of skin cancer.\n\n" +
+                       "Recommended actions:\n" +
+                       "1. Seek IMMEDIATE medical attention\n" +
+                       "2. Schedule an emergency appointment with a dermatologist\n" +
+                       "3. Bring this image and analysis to your appointment\n" +
+                       "4. Do not delay - early treatment is crucial\n\n" +
+                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
+
+            case "Melanocytic Nevi (moles)":
+                return "The AI model suggests this is a common mole (Melanocytic Nevus).\n\n" +
+                       "Recommended actions:\n" +
+                       "1. Regular self-monitoring using the ABCDE rule:\n" +
+                       "   - Asymmetry\n" +
+                       "   - Border irregularity\n" +
+                       "   - Color variation\n" +
+                       "   - Diameter > 6mm\n" +
+                       "   - Evolving size/shape\n" +
+                       "2. Annual skin check with a dermatologist\n" +
+                       "3. Protect from sun exposure\n\n" +
+                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
+
+            case "Vascular Lesions":
+                return "The AI model suggests this may be a vascular lesion.\n\n" +
+                       "Recommended actions:\n" +
+                       "1. Schedule a consultation with a dermatologist\n" +
+                       "2. Monitor for any changes in size or color\n" +
+                       "3. Document any associated symptoms\n" +
+                       "4. Protect the area from injury\n\n" +
+                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
+
+            default:
+                return "Please consult with a healthcare professional for proper diagnosis and treatment.\n\n" +
+                       "Note: This is an AI-assisted analysis and should not be considered a final diagnosis.";
+        }
+    }
+
+    private SkinConditions() {
+    }
+}
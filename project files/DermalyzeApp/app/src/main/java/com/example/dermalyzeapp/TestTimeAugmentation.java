@@ -0,0 +1,170 @@
+package com.example.dermalyzeapp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Test-time augmentation: classifies flipped, rotated and cropped views of a scan and
+ * averages their probabilities.
+ *
+ * The views are rendered one at a time into a single 224x224 bitmap and fed to one batched
+ * inference call. How many views are used depends on how fast the device turned out to be:
+ * the latency of every run is tracked and the count is lowered until a diagnosis fits in
+ * {@link #LATENCY_BUDGET_MS}. Turned on through the {@code tta_enabled} setting.
+ */
+public final class TestTimeAugmentation {
+    private static final String TAG = "TestTimeAugmentation";
+    static final String KEY_TTA_ENABLED = "tta_enabled";
+    static final long LATENCY_BUDGET_MS = 1200;
+    static final int INITIAL_COUNT = 4;
+    private static final float CROP_FRACTION = 0.8f;
+    private static final int IMAGE_SIZE = SkinClassifierEngine.IMAGE_SIZE;
+
+    // Measured cost of one view, shared by every diagnosis; negative until the first run
+    private static volatile double millisPerView = -1;
+
+    /**
+     * The views, most useful first; a slow device only gets a prefix of this list.
+     */
+    enum Augmentation {
+        IDENTITY(0, false, -1, -1),
+        FLIP_HORIZONTAL(0, true, -1, -1),
+        ROTATE_90(90, false, -1, -1),
+        CENTER_CROP(0, false, 0.5f, 0.5f),
+        ROTATE_270(270, false, -1, -1),
+        ROTATE_180(180, false, -1, -1),
+        TOP_LEFT_CROP(0, false, 0f, 0f),
+        BOTTOM_RIGHT_CROP(0, false, 1f, 1f),
+        TOP_RIGHT_CROP(0, false, 1f, 0f),
+        BOTTOM_LEFT_CROP(0, false, 0f, 1f);
+
+        final int rotation;
+        final boolean flip;
+        // Position of the crop within the slack left by CROP_FRACTION; negative for no crop
+        final float cropX;
+        final float cropY;
+
+        Augmentation(int rotation, boolean flip, float cropX, float cropY) {
+            this.rotation = rotation;
+            this.flip = flip;
+            this.cropX = cropX;
+            this.cropY = cropY;
+        }
+    }
+
+    private final Bitmap source;
+    private final Bitmap view;
+    private final Canvas canvas;
+    private final Rect sourceBounds = new Rect();
+    private final Rect viewBounds = new Rect(0, 0, IMAGE_SIZE, IMAGE_SIZE);
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private TestTimeAugmentation(Bitmap source) {
+        this.source = source;
+        this.view = Bitmap.createBitmap(IMAGE_SIZE, IMAGE_SIZE, Bitmap.Config.ARGB_8888);
+        this.canvas = new Canvas(view);
+        paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+    }
+
+    public static boolean isEnabled(Context context) {
+        return context.getSharedPreferences(ModelVariant.PREFS_NAME, Context.MODE_PRIVATE)
+                .getBoolean(KEY_TTA_ENABLED, false);
+    }
+
+    /**
+     * Classifies as many views of {@code image} as the latency budget allows and returns
+     * their mean probabilities.
+     */
+    public static float[] classify(SkinClassifierEngine engine, Bitmap image) throws IOException, InterruptedException {
+        int count = chooseCount(LATENCY_BUDGET_MS, millisPerView, Augmentation.values().length);
+        TestTimeAugmentation augmentation = new TestTimeAugmentation(image);
+        float[][] probabilities;
+        long start = SystemClock.elapsedRealtime();
+        try {
+            probabilities = engine.classifyBatch(count, augmentation::render);
+        } finally {
+            augmentation.view.recycle();
+        }
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        millisPerView = updateEstimate(millisPerView, (double) elapsed / count);
+        Log.d(TAG, "Classified " + count + " views in " + elapsed + " ms");
+
+        float[] mean = new float[SkinClassifierEngine.NUM_CLASSES];
+        ScanMetrics.Span span = ScanMetrics.begin(ScanMetrics.Stage.POSTPROCESS);
+        try {
+            average(probabilities, mean);
+        } finally {
+            span.end();
+        }
+        return mean;
+    }
+
+    /**
+     * Draws view {@code index} into the shared bitmap. The engine copies it into the batch
+     * before asking for the next one.
+     */
+    private Bitmap render(int index) {
+        Augmentation augmentation = Augmentation.values()[index];
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (augmentation.cropX < 0) {
+            sourceBounds.set(0, 0, width, height);
+        } else {
+            int cropWidth = Math.round(width * CROP_FRACTION);
+            int cropHeight = Math.round(height * CROP_FRACTION);
+            int left = Math.round((width - cropWidth) * augmentation.cropX);
+            int top = Math.round((height - cropHeight) * augmentation.cropY);
+            sourceBounds.set(left, top, left + cropWidth, top + cropHeight);
+        }
+
+        float center = IMAGE_SIZE / 2f;
+        canvas.save();
+        if (augmentation.flip) {
+            canvas.scale(-1, 1, center, center);
+        }
+        canvas.rotate(augmentation.rotation, center, center);
+        canvas.drawBitmap(source, sourceBounds, viewBounds, paint);
+        canvas.restore();
+        return view;
+    }
+
+    /**
+     * Number of views that fit in {@code budgetMillis}, between 1 and {@code max}.
+     */
+    static int chooseCount(long budgetMillis, double millisPerView, int max) {
+        if (millisPerView <= 0) {
+            return Math.min(INITIAL_COUNT, max);
+        }
+        return (int) Math.max(1, Math.min(max, budgetMillis / millisPerView));
+    }
+
+    /**
+     * Exponential moving average of the per-view latency, so a single slow run (e.g. while
+     * the app is starting) does not drop the count for good.
+     */
+    static double updateEstimate(double previous, double sample) {
+        return previous <= 0 ? sample : previous * 0.7 + sample * 0.3;
+    }
+
+    static void average(float[][] probabilities, float[] mean) {
+        Arrays.fill(mean, 0f);
+        for (float[] row : probabilities) {
+            for (int i = 0; i < mean.length; i++) {
+                mean[i] += row[i];
+            }
+        }
+        for (int i = 0; i < mean.length; i++) {
+            mean[i] /= probabilities.length;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.dermalyzeapp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Converts YUV_420_888 camera frames to ARGB pixels for the live pre-screen.
+ *
+ * Only the centre square of the frame is converted, turned upright and sampled straight down
+ * to the requested size, so a full-resolution RGB frame is never built. Reads the planes with
+ * absolute gets and writes into the caller's array, so converting does not allocate.
+ */
+final class YuvConverter {
+    private YuvConverter() {
+    }
+
+    /**
+     * Writes the upright centre square of a {@code width}x{@code height} frame as
+     * {@code size}x{@code size} ARGB pixels into {@code out}. {@code rotationDegrees} is the
+     * clockwise rotation that turns the frame upright, as reported by the camera. The U and V
+     * planes share their strides, as YUV_420_888 guarantees.
+     */
+    static void toArgb(ByteBuffer y, int yRowStride, int yPixelStride,
+                       ByteBuffer u, ByteBuffer v, int uvRowStride, int uvPixelStride,
+                       int width, int height, int rotationDegrees, int size, int[] out) {
+        int side = Math.min(width, height);
+        int left = (width - side) / 2;
+        int top = (height - side) / 2;
+        int rotation = ((rotationDegrees % 360) + 360) % 360;
+
+        for (int outY = 0; outY < size; outY++) {
+            // Centre of the output pixel, in upright crop coordinates
+            int uprightY = (int) ((outY + 0.5f) * side / size);
+            for (int outX = 0; outX < size; outX++) {
+                int uprightX = (int) ((outX + 0.5f) * side / size);
+                int sourceX;
+                int sourceY;
+                switch (rotation) {
+                    case 90:
+                        sourceX = uprightY;
+                        sourceY = side - 1 - uprightX;
+                        break;
+                    case 180:
+                        sourceX = side - 1 - uprightX;
+                        sourceY = side - 1 - uprightY;
+                        break;
+                    case 270:
+                        sourceX = side - 1 - uprightY;
+                        sourceY = uprightX;
+                        break;
+                    default:
+                        sourceX = uprightX;
+                        sourceY = uprightY;
+                        break;
+                }
+                sourceX += left;
+                sourceY += top;
+
+                int luma = y.get(sourceY * yRowStride + sourceX * yPixelStride) & 0xFF;
+                int chromaIndex = (sourceY >> 1) * uvRowStride + (sourceX >> 1) * uvPixelStride;
+                int cb = (u.get(chromaIndex) & 0xFF) - 128;
+                int cr = (v.get(chromaIndex) & 0xFF) - 128;
+                out[outY * size + outX] = toArgb(luma, cb, cr);
+            }
+        }
+    }
+
+    /**
+     * Full-range BT.601, as camera JPEG/YUV output uses, in 10-bit fixed point.
+     */
+    static int toArgb(int luma, int cb, int cr) {
+        int r = clamp(luma + ((1436 * cr) >> 10));
+        int g = clamp(luma - ((352 * cb + 731 * cr) >> 10));
+        int b = clamp(luma + ((1815 * cb) >> 10));
+        return 0xFF000000 | (r << 16) | (g << 8) | b;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.dermalyzeapp;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory {@link ScanHistoryRepository} for tests. Scans added with {@link #add} or
+ * {@link #save} stand in for rows in the local store; observers only see the newest
+ * {@code pages * PAGE_SIZE} of them, like the windowed query.
+ */
+class FakeScanHistoryRepository implements ScanHistoryRepository {
+    private static final Comparator<ScanResult> NEWEST_FIRST = Comparator
+            .comparing((ScanResult scan) -> scan.getTimestamp().getSeconds())
+            .thenComparing(scan -> scan.getTimestamp().getNanoseconds())
+            .thenComparing(ScanResult::getId)
+            .reversed();
+
+    private final Map<String, Map<String, ScanResult>> scans = new HashMap<>();
+    private final Map<String, Integer> windows = new HashMap<>();
+    private final Map<String, List<Observer>> observers = new HashMap<>();
+
+    void add(String userId, ScanResult scan) {
+        scans.computeIfAbsent(userId, id -> new HashMap<>()).put(scan.getId(), scan);
+        publish(userId);
+    }
+
+    void remove(String userId, String scanId) {
+        scans.computeIfAbsent(userId, id -> new HashMap<>()).remove(scanId);
+        publish(userId);
+    }
+
+    void fail(String userId, Exception e) {
+        for (Observer observer : new ArrayList<>(observers.getOrDefault(userId, new ArrayList<>()))) {
+            observer.onError(e);
+        }
+    }
+
+    @Override
+    public Subscription observe(String userId, Observer observer) {
+        observers.computeIfAbsent(userId, id -> new ArrayList<>()).add(observer);
+        windows.putIfAbsent(userId, PAGE_SIZE);
+        observer.onScansChanged(window(userId));
+        return () -> observers.get(userId).remove(observer);
+    }
+
+    @Override
+    public void loadMore(String userId) {
+        if (hasMore(userId)) {
+            windows.put(userId, windows.get(userId) + PAGE_SIZE);
+            publish(userId);
+        }
+    }
+
+    @Override
+    public boolean hasMore(String userId) {
+        Map<String, ScanResult> stored = scans.get(userId);
+        return stored != null && windows.containsKey(userId) && stored.size() > windows.get(userId);
+    }
+
+    @Override
+    public List<ScanResult> loadAll(String userId) {
+        List<ScanResult> all = new ArrayList<>(scans.getOrDefault(userId, new HashMap<>()).values());
+        all.sort(NEWEST_FIRST.reversed());
+        return all;
+    }
+
+    @Override
+    public void save(String userId, List<ScanResult> saved, SaveCallback callback) {
+        for (ScanResult scan : saved) {
+            scans.computeIfAbsent(userId, id -> new HashMap<>()).put(scan.getId(), scan);
+        }
+        callback.onSaved();
+        publish(userId);
+    }
+
+    @Override
+    public void clear() {
+        windows.clear();
+    }
+
+    private List<ScanResult> window(String userId) {
+        List<ScanResult> all = new ArrayList<>(scans.getOrDefault(userId, new HashMap<>()).values());
+        all.sort(NEWEST_FIRST);
+        int limit = windows.getOrDefault(userId, PAGE_SIZE);
+        return new ArrayList<>(all.subList(0, Math.min(limit, all.size())));
+    }
+
+    private void publish(String userId) {
+        List<ScanResult> scans = window(userId);
+        for (Observer observer : new ArrayList<>(observers.getOrDefault(userId, new ArrayList<>()))) {
+            observer.onScansChanged(scans);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FrameSteadinessTest {
+    @Test
+    public void update_measuresMotionBetweenFrames() {
+        int size = 8;
+        FrameSteadiness steadiness = new FrameSteadiness(size);
+        int[] dark = new int[size * size];
+        int[] bright = new int[size * size];
+        Arrays.fill(dark, 0xFF101010);
+        Arrays.fill(bright, 0xFF909090);
+
+        assertEquals(0f, steadiness.update(dark), 0f);
+        assertEquals(0f, steadiness.update(dark), 0f);
+        assertEquals(128f, steadiness.update(bright), 1f);
+    }
+}
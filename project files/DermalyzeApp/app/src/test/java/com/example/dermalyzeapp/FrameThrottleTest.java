@@ -0,0 +1,34 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameThrottleTest {
+    @Test
+    public void tryStart_skipsFramesAboveTheTargetRate() {
+        FrameThrottle throttle = new FrameThrottle(5, 0.5f);
+
+        assertTrue(throttle.tryStart(0));
+        assertFalse(throttle.tryStart(33));
+        assertFalse(throttle.tryStart(199));
+        assertTrue(throttle.tryStart(200));
+    }
+
+    @Test
+    public void tryStart_backsOffWhenInferenceIsSlow() {
+        FrameThrottle throttle = new FrameThrottle(5, 0.5f);
+        throttle.tryStart(0);
+        throttle.finished(300);
+
+        // 300 ms of work at most half the time
+        assertEquals(600, throttle.getIntervalMillis());
+        assertFalse(throttle.tryStart(400));
+        assertTrue(throttle.tryStart(600));
+
+        for (int i = 0; i < 50; i++) {
+            throttle.finished(20);
+        }
+        assertEquals(200, throttle.getIntervalMillis());
+    }
+}
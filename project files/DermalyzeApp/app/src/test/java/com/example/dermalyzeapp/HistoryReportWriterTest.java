@@ -0,0 +1,63 @@
+package com.example.dermalyzeapp;
+
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HistoryReportWriterTest {
+    private static final long DAY = 24 * 3600;
+    private static final long MONTH = (long) (30.44 * DAY);
+
+    private static ScanResult scan(String id, String condition, double confidence, long seconds) {
+        return new ScanResult(id, null, condition, confidence, new Timestamp(seconds, 0), "");
+    }
+
+    @Test
+    public void groupByCondition_followsConditionOrderThenTime() {
+        String first = SkinConditions.NAMES[0];
+        String second = SkinConditions.NAMES[1];
+        List<ScanResult> ordered = HistoryReportWriter.groupByCondition(Arrays.asList(
+                scan("a", second, 0.8, 300),
+                scan("b", first, 0.8, 200),
+                scan("c", "Unlisted", 0.8, 50),
+                scan("d", second, 0.8, 100),
+                scan("e", first, 0.8, 400)));
+
+        assertEquals(Arrays.asList("b", "e", "d", "a", "c"), ids(ordered));
+    }
+
+    @Test
+    public void confidenceTrend_isSlopeInPointsPerMonth() {
+        String condition = SkinConditions.NAMES[0];
+        List<ScanResult> scans = Arrays.asList(
+                scan("a", condition, 0.60, 0),
+                scan("b", condition, 0.70, MONTH),
+                scan("c", condition, 0.80, 2 * MONTH));
+
+        assertEquals(10.0, HistoryReportWriter.confidenceTrendPerMonth(scans), 0.01);
+        assertEquals(0.70, HistoryReportWriter.averageConfidence(scans), 1e-9);
+    }
+
+    @Test
+    public void confidenceTrend_isFlatWithoutASpanOfTime() {
+        String condition = SkinConditions.NAMES[0];
+
+        assertEquals(0, HistoryReportWriter.confidenceTrendPerMonth(
+                Arrays.asList(scan("a", condition, 0.9, 100))), 0);
+        assertEquals(0, HistoryReportWriter.confidenceTrendPerMonth(
+                Arrays.asList(scan("a", condition, 0.9, 100), scan("b", condition, 0.5, 100))), 0);
+    }
+
+    private static List<String> ids(List<ScanResult> scans) {
+        String[] ids = new String[scans.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = scans.get(i).getId();
+        }
+        return Arrays.asList(ids);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.support.common.ops.NormalizeOp;
+import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the allocation-free input fill against the TensorImage + NormalizeOp path it replaced.
+ */
+public class ImagePreprocessorTest {
+    private static final int SIZE = 224;
+
+    @Test
+    public void fillInputBuffer_matchesNormalizeOp() {
+        int[] pixels = new int[SIZE * SIZE];
+        Random random = new Random(101);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+
+        // What TensorImage.load(bitmap) produces: uint8 RGB, alpha dropped
+        int[] rgb = new int[pixels.length * 3];
+        for (int i = 0; i < pixels.length; i++) {
+            rgb[i * 3] = (pixels[i] >> 16) & 0xFF;
+            rgb[i * 3 + 1] = (pixels[i] >> 8) & 0xFF;
+            rgb[i * 3 + 2] = pixels[i] & 0xFF;
+        }
+        TensorBuffer uint8 = TensorBuffer.createFixedSize(new int[] {SIZE, SIZE, 3}, DataType.UINT8);
+        uint8.loadArray(rgb);
+        float[] expected = new NormalizeOp(0f, 255f).apply(uint8).getFloatArray();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(expected.length * 4).order(ByteOrder.nativeOrder());
+        FloatBuffer floats = buffer.asFloatBuffer();
+        ImagePreprocessor.fillInputBuffer(pixels, pixels.length, floats);
+        assertEquals(expected.length, floats.position());
+
+        floats.rewind();
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("value " + i, Float.floatToIntBits(expected[i]), Float.floatToIntBits(floats.get(i)));
+        }
+    }
+
+    @Test
+    public void fillInputBuffer_scalesChannelsToUnitRange() {
+        int[] pixels = {0xFF000000, 0xFFFFFFFF, 0x00FF8000};
+        FloatBuffer floats = FloatBuffer.allocate(pixels.length * 3);
+        ImagePreprocessor.fillInputBuffer(pixels, pixels.length, floats);
+
+        float[] expected = {0f, 0f, 0f, 1f, 1f, 1f, 1f, 128 / 255f, 0f};
+        assertArrayEquals(expected, floats.array(), 0f);
+    }
+
+    @Test
+    public void buildQuantizationTable_int8FullRange() {
+        byte[] table = ImagePreprocessor.buildQuantizationTable(1f / 255f, -128, true);
+
+        for (int value = 0; value < 256; value++) {
+            assertEquals(value - 128, table[value]);
+        }
+    }
+
+    @Test
+    public void buildQuantizationTable_clampsToUint8() {
+        // A tensor quantized over [0, 0.5] saturates for the upper half of the channel range
+        byte[] table = ImagePreprocessor.buildQuantizationTable(0.5f / 255f, 0, false);
+
+        assertEquals(0, table[0] & 0xFF);
+        assertEquals(200, table[100] & 0xFF);
+        assertEquals(255, table[200] & 0xFF);
+        assertEquals(255, table[255] & 0xFF);
+    }
+
+    @Test
+    public void fillQuantizedInputBuffer_writesRgbThroughTable() {
+        byte[] table = ImagePreprocessor.buildQuantizationTable(1f / 255f, -128, true);
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        ImagePreprocessor.fillQuantizedInputBuffer(new int[] {0xFFFF8000}, 1, table, buffer);
+
+        assertArrayEquals(new byte[] {127, 0, -128}, buffer.array());
+    }
+}
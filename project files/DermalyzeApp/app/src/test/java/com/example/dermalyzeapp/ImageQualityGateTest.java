@@ -0,0 +1,102 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ImageQualityGateTest {
+    private static final int SIZE = 224;
+
+    private static int gray(int level) {
+        int value = Math.max(0, Math.min(255, level));
+        return 0xFF000000 | (value << 16) | (value << 8) | value;
+    }
+
+    /**
+     * Mid-grey skin texture with fine noise and a dark lesion of radius 30 at (centerX, centerY).
+     */
+    private static int[] skin(int centerX, int centerY, int brightness, int noise) {
+        Random random = new Random(42);
+        int[] pixels = new int[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int dx = x - centerX;
+                int dy = y - centerY;
+                int level = dx * dx + dy * dy < 30 * 30 ? brightness - 70 : brightness;
+                pixels[y * SIZE + x] = gray(level + random.nextInt(2 * noise + 1) - noise);
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Box blur of the given radius, standing in for an out-of-focus shot.
+     */
+    private static int[] blur(int[] pixels, int radius) {
+        int[] out = new int[pixels.length];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                int sum = 0;
+                int count = 0;
+                for (int yy = Math.max(0, y - radius); yy <= Math.min(SIZE - 1, y + radius); yy++) {
+                    for (int xx = Math.max(0, x - radius); xx <= Math.min(SIZE - 1, x + radius); xx++) {
+                        sum += pixels[yy * SIZE + xx] & 0xFF;
+                        count++;
+                    }
+                }
+                out[y * SIZE + x] = gray(sum / count);
+            }
+        }
+        return out;
+    }
+
+    @Test
+    public void check_passesSharpWellLitCenteredPhoto() {
+        ImageQualityGate.Report report = new ImageQualityGate().check(skin(112, 112, 150, 20), SIZE, SIZE);
+
+        assertEquals(ImageQualityGate.Verdict.OK, report.verdict);
+        assertTrue(report.issues.isEmpty());
+        assertTrue(report.sharpness > ImageQualityGate.WARN_SHARPNESS);
+    }
+
+    @Test
+    public void check_rejectsBlurryPhoto() {
+        ImageQualityGate.Report report = new ImageQualityGate().check(blur(skin(112, 112, 150, 20), 4), SIZE, SIZE);
+
+        assertEquals(ImageQualityGate.Verdict.REJECT, report.verdict);
+        assertTrue(report.issues.contains(ImageQualityGate.Issue.BLURRY));
+    }
+
+    @Test
+    public void check_rejectsBadExposure() {
+        ImageQualityGate gate = new ImageQualityGate();
+
+        ImageQualityGate.Report dark = gate.check(skin(112, 112, 25, 20), SIZE, SIZE);
+        assertEquals(ImageQualityGate.Verdict.REJECT, dark.verdict);
+        assertTrue(dark.issues.contains(ImageQualityGate.Issue.UNDEREXPOSED));
+
+        ImageQualityGate.Report bright = gate.check(skin(112, 112, 250, 20), SIZE, SIZE);
+        assertEquals(ImageQualityGate.Verdict.REJECT, bright.verdict);
+        assertTrue(bright.issues.contains(ImageQualityGate.Issue.OVEREXPOSED));
+    }
+
+    @Test
+    public void check_warnsWhenLesionIsNearTheEdge() {
+        ImageQualityGate.Report report = new ImageQualityGate().check(skin(35, 35, 150, 20), SIZE, SIZE);
+
+        assertEquals(ImageQualityGate.Verdict.WARN, report.verdict);
+        assertEquals(EnumSet.of(ImageQualityGate.Issue.OFF_CENTER), report.issues);
+    }
+
+    @Test
+    public void laplacianVariance_isZeroForFlatImage() {
+        int[] flat = new int[9 * 9];
+        Arrays.fill(flat, 128);
+
+        assertEquals(0f, ImageQualityGate.laplacianVariance(flat, 9, 9), 0f);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InferenceOptionsTest {
+
+    @Test
+    public void encode_roundTrips() {
+        InferenceOptions[] all = {
+                new InferenceOptions(4, true, false),
+                new InferenceOptions(2, false, false),
+                new InferenceOptions(1, false, true)
+        };
+        for (InferenceOptions options : all) {
+            assertEquals(options, InferenceOptions.decode(options.encode()));
+        }
+    }
+
+    @Test
+    public void decode_rejectsMalformedValues() {
+        assertNull(InferenceOptions.decode(null));
+        assertNull(InferenceOptions.decode("four,xnnpack"));
+        assertNull(InferenceOptions.decode("4,gpu"));
+        assertNull(InferenceOptions.decode("4"));
+    }
+
+    @Test
+    public void fallbackChain_endsOnSingleThreadedCpu() {
+        List<InferenceOptions> chain = new InferenceOptions(1, false, true).fallbackChain(2);
+
+        assertEquals(new InferenceOptions(1, false, true), chain.get(0));
+        assertEquals(InferenceOptions.defaults(2), chain.get(1));
+        assertEquals(new InferenceOptions(1, false, false), chain.get(chain.size() - 1));
+    }
+
+    @Test
+    public void defaultThreadCount_isBounded() {
+        int threads = InferenceOptions.defaultThreadCount(2);
+        assertTrue(threads >= 1 && threads <= 4);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class InferenceResultCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final float[] PROBABILITIES = {0.05f, 0.1f, 0.02f, 0.03f, 0.6f, 0.15f, 0.05f};
+    private static final Set<ImageQualityGate.Issue> NO_ISSUES = EnumSet.noneOf(ImageQualityGate.Issue.class);
+
+    @Test
+    public void key_dependsOnBytesAndModel() {
+        byte[] image = {1, 2, 3};
+
+        String key = InferenceResultCache.key(image, "FLOAT32@1");
+
+        assertEquals(64, key.length());
+        assertEquals(key, InferenceResultCache.key(new byte[]{1, 2, 3}, "FLOAT32@1"));
+        assertNotEquals(key, InferenceResultCache.key(new byte[]{1, 2, 4}, "FLOAT32@1"));
+        assertNotEquals(key, InferenceResultCache.key(image, "INT8@1"));
+    }
+
+    @Test
+    public void get_countsMemoryHitsDiskHitsAndMisses() throws IOException {
+        File directory = folder.newFolder();
+        InferenceResultCache cache = new InferenceResultCache(directory, 4, 10);
+
+        assertNull(cache.get("a"));
+        cache.put("a", PROBABILITIES, NO_ISSUES);
+        assertArrayEquals(PROBABILITIES, cache.get("a").probabilities, 0f);
+
+        // A fresh instance only has the disk copy
+        InferenceResultCache reopened = new InferenceResultCache(directory, 4, 10);
+        assertArrayEquals(PROBABILITIES, reopened.get("a").probabilities, 0f);
+        reopened.get("a");
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getMemoryHitCount());
+        assertEquals(1, reopened.getDiskHitCount());
+        assertEquals(1, reopened.getMemoryHitCount());
+        assertEquals(2, reopened.getHitCount());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedFiles() throws IOException {
+        File directory = folder.newFolder();
+        InferenceResultCache cache = new InferenceResultCache(directory, 1, 2);
+        cache.put("a", PROBABILITIES, NO_ISSUES);
+        cache.put("b", PROBABILITIES, NO_ISSUES);
+        new File(directory, "a").setLastModified(1000);
+        new File(directory, "b").setLastModified(2000);
+
+        cache.put("c", PROBABILITIES, NO_ISSUES);
+
+        assertFalse(new File(directory, "a").exists());
+        assertTrue(new File(directory, "b").exists());
+        assertTrue(new File(directory, "c").exists());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void recordScan_marksEntrySavedForThatUserOnly() throws IOException {
+        File directory = folder.newFolder();
+        InferenceResultCache cache = new InferenceResultCache(directory, 4, 10);
+        cache.put("a", PROBABILITIES, NO_ISSUES);
+        assertFalse(cache.get("a").isSavedFor("user1"));
+
+        cache.recordScan("a", "user1", "20240101_120000");
+
+        InferenceResultCache.Entry entry = new InferenceResultCache(directory, 4, 10).get("a");
+        assertTrue(entry.isSavedFor("user1"));
+        assertFalse(entry.isSavedFor("user2"));
+        assertEquals("20240101_120000", entry.scanIdFor("user1"));
+        assertNull(entry.scanIdFor("user2"));
+        assertArrayEquals(PROBABILITIES, entry.probabilities, 0f);
+    }
+
+    @Test
+    public void recordScan_keepsEveryUsersScan() throws IOException {
+        File directory = folder.newFolder();
+        InferenceResultCache cache = new InferenceResultCache(directory, 4, 10);
+        cache.put("a", PROBABILITIES, NO_ISSUES);
+
+        cache.recordScan("a", "user1", "20240101_120000");
+        cache.recordScan("a", "user2", "20240102_090000");
+
+        InferenceResultCache.Entry entry = new InferenceResultCache(directory, 4, 10).get("a");
+        assertEquals("20240101_120000", entry.scanIdFor("user1"));
+        assertEquals("20240102_090000", entry.scanIdFor("user2"));
+    }
+
+    @Test
+    public void put_keepsQualityWarningsAcrossReopen() throws IOException {
+        File directory = folder.newFolder();
+        InferenceResultCache cache = new InferenceResultCache(directory, 4, 10);
+        Set<ImageQualityGate.Issue> warnings = EnumSet.of(ImageQualityGate.Issue.BLURRY, ImageQualityGate.Issue.OFF_CENTER);
+        cache.put("a", PROBABILITIES, warnings);
+        cache.put("b", PROBABILITIES, NO_ISSUES);
+        cache.recordScan("a", "user1", "20240101_120000");
+
+        InferenceResultCache reopened = new InferenceResultCache(directory, 4, 10);
+        assertEquals(warnings, reopened.get("a").qualityIssues);
+        assertTrue(reopened.get("b").qualityIssues.isEmpty());
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void buckets_coverEveryValueWithinPrecision() {
+        for (long value = 0; value < 1_000_000; value += 37) {
+            long highest = LatencyHistogram.highestValueIn(LatencyHistogram.indexOf(value));
+            assertTrue(value + " -> " + highest, highest >= value);
+            assertTrue(value + " -> " + highest, highest - value <= Math.max(1, value / 16));
+        }
+        assertEquals(LatencyHistogram.indexOf(31) + 1, LatencyHistogram.indexOf(32));
+    }
+
+    @Test
+    public void percentiles_ofUniformLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(millis * 1000L);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1000, histogram.getMin());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_500, histogram.getMean(), 0.001);
+        assertEquals(50_000, histogram.getValueAtPercentile(50), 50_000 * 0.04);
+        assertEquals(95_000, histogram.getValueAtPercentile(95), 95_000 * 0.04);
+        assertEquals(100_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void emptyAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(95));
+
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+        assertEquals(0, histogram.getMin());
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.dermalyzeapp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares a quantized model's probability vectors against the float model's on the same images.
+ *
+ * Vectors are read from the CSV files written by the parity cell of the training notebook
+ * ({@code image_id,p0,...,p6} per row, with a header), so the comparison runs on the JVM
+ * without a device.
+ */
+public final class ModelParityReport {
+    private final int numClasses;
+    private final double[] sumDrift;
+    private final float[] maxDrift;
+    private int samples = 0;
+    private int top1Agreements = 0;
+
+    public ModelParityReport(int numClasses) {
+        this.numClasses = numClasses;
+        this.sumDrift = new double[numClasses];
+        this.maxDrift = new float[numClasses];
+    }
+
+    public static ModelParityReport compare(Map<String, float[]> reference, Map<String, float[]> candidate) {
+        ModelParityReport report = new ModelParityReport(SkinClassifierEngine.NUM_CLASSES);
+        for (Map.Entry<String, float[]> entry : reference.entrySet()) {
+            float[] other = candidate.get(entry.getKey());
+            if (other == null) {
+                throw new IllegalArgumentException("Missing image in candidate results: " + entry.getKey());
+            }
+            report.add(entry.getValue(), other);
+        }
+        return report;
+    }
+
+    public void add(float[] reference, float[] candidate) {
+        if (reference.length != numClasses || candidate.length != numClasses) {
+            throw new IllegalArgumentException("Expected " + numClasses + " probabilities");
+        }
+        samples++;
+        if (argmax(reference) == argmax(candidate)) {
+            top1Agreements++;
+        }
+        for (int i = 0; i < numClasses; i++) {
+            float drift = Math.abs(reference[i] - candidate[i]);
+            sumDrift[i] += drift;
+            maxDrift[i] = Math.max(maxDrift[i], drift);
+        }
+    }
+
+    private static int argmax(float[] values) {
+        int maxIndex = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[maxIndex]) {
+                maxIndex = i;
+            }
+        }
+        return maxIndex;
+    }
+
+    public int getSampleCount() {
+        return samples;
+    }
+
+    public double getTop1Agreement() {
+        return samples == 0 ? 0 : (double) top1Agreements / samples;
+    }
+
+    public double getMeanDrift(int classIndex) {
+        return samples == 0 ? 0 : sumDrift[classIndex] / samples;
+    }
+
+    public float getMaxDrift(int classIndex) {
+        return maxDrift[classIndex];
+    }
+
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.US, "samples=%d top1_agreement=%.4f%n", samples, getTop1Agreement()));
+        for (int i = 0; i < numClasses; i++) {
+            out.append(String.format(Locale.US, "class %d: mean_drift=%.5f max_drift=%.5f%n",
+                    i, getMeanDrift(i), getMaxDrift(i)));
+        }
+        return out.toString();
+    }
+
+    public static Map<String, float[]> readCsv(Reader reader) throws IOException {
+        Map<String, float[]> vectors = new LinkedHashMap<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line = lines.readLine(); // header
+        while ((line = lines.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            String[] columns = line.split(",");
+            float[] probabilities = new float[columns.length - 1];
+            for (int i = 1; i < columns.length; i++) {
+                probabilities[i - 1] = Float.parseFloat(columns[i].trim());
+            }
+            vectors.put(columns[0].trim(), probabilities);
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ModelParityReportTest {
+    private static final double MIN_TOP1_AGREEMENT = 0.98;
+    private static final double MAX_MEAN_DRIFT = 0.02;
+    // The fixed input set: small seeded images, run through a seeded linear stand-in for the model
+    private static final int IMAGE_COUNT = 64;
+    private static final int IMAGE_PIXELS = 16 * 16;
+
+    @Test
+    public void add_countsTop1AgreementAndDrift() {
+        ModelParityReport report = new ModelParityReport(3);
+        report.add(new float[] {0.7f, 0.2f, 0.1f}, new float[] {0.6f, 0.3f, 0.1f});
+        report.add(new float[] {0.1f, 0.5f, 0.4f}, new float[] {0.1f, 0.4f, 0.5f});
+
+        assertEquals(2, report.getSampleCount());
+        assertEquals(0.5, report.getTop1Agreement(), 1e-9);
+        assertEquals(0.1, report.getMeanDrift(0) * 2, 1e-6);
+        assertEquals(0.1f, report.getMaxDrift(1), 1e-6f);
+        assertEquals(0.05, report.getMeanDrift(2), 1e-6);
+    }
+
+    @Test
+    public void readCsv_keysVectorsByImage() throws IOException {
+        String csv = "image_id,p0,p1\nISIC_1,0.25,0.75\n\nISIC_2,1.0,0.0\n";
+        Map<String, float[]> vectors = ModelParityReport.readCsv(new StringReader(csv));
+
+        assertEquals(2, vectors.size());
+        assertArrayEquals(new float[] {0.25f, 0.75f}, vectors.get("ISIC_1"), 0f);
+        assertArrayEquals(new float[] {1f, 0f}, vectors.get("ISIC_2"), 0f);
+    }
+
+    @Test
+    public void int8Input_agreesWithFloatInput() {
+        assertParity(inputParity(1f / 255f, -128, true));
+    }
+
+    @Test
+    public void uint8Input_agreesWithFloatInput() {
+        assertParity(inputParity(1f / 255f, 0, false));
+    }
+
+    @Test
+    public void coarseUint8Input_staysWithinParityBounds() {
+        // Half the levels of the usual input tensor: still well inside the bounds the models must meet
+        ModelParityReport report = inputParity(2f / 255f, 0, false);
+
+        assertParity(report);
+        assertTrue(report.format(), report.getMaxDrift(0) > 0);
+    }
+
+    @Test
+    public void clippedInput_failsParity() {
+        // A tensor quantized over [0, 0.5] saturates the brighter half of every channel
+        ModelParityReport report = inputParity(0.5f / 255f, 0, false);
+
+        assertTrue(report.format(), report.getTop1Agreement() < MIN_TOP1_AGREEMENT);
+    }
+
+    @Test
+    public void int8Model_agreesWithFloatModel() throws IOException {
+        assertParity("parity/int8.csv");
+    }
+
+    @Test
+    public void float16Model_agreesWithFloatModel() throws IOException {
+        assertParity("parity/fp16.csv");
+    }
+
+    /**
+     * Compares the real models' outputs exported by the notebook's "Parity export" cell. A
+     * missing export fails the test, so a variant cannot ship without its accuracy checked.
+     */
+    private void assertParity(String candidatePath) throws IOException {
+        Map<String, float[]> reference = readResource("parity/float32.csv");
+        Map<String, float[]> candidate = readResource(candidatePath);
+
+        assertParity(ModelParityReport.compare(reference, candidate));
+    }
+
+    private static void assertParity(ModelParityReport report) {
+        assertTrue(report.format(), report.getTop1Agreement() >= MIN_TOP1_AGREEMENT);
+        for (int i = 0; i < SkinClassifierEngine.NUM_CLASSES; i++) {
+            assertTrue(report.format(), report.getMeanDrift(i) <= MAX_MEAN_DRIFT);
+        }
+    }
+
+    /**
+     * Fills the float and the quantized input the way {@link ImagePreprocessor} does for the
+     * fixed input set, dequantizes the latter as the interpreter would, and compares what the
+     * stand-in model makes of each.
+     */
+    private static ModelParityReport inputParity(float scale, int zeroPoint, boolean signed) {
+        Random random = new Random(7);
+        int inputSize = IMAGE_PIXELS * 3;
+        float[][] weights = new float[SkinClassifierEngine.NUM_CLASSES][inputSize];
+        for (float[] row : weights) {
+            for (int i = 0; i < inputSize; i++) {
+                row[i] = (float) random.nextGaussian();
+            }
+        }
+
+        byte[] table = ImagePreprocessor.buildQuantizationTable(scale, zeroPoint, signed);
+        ModelParityReport report = new ModelParityReport(SkinClassifierEngine.NUM_CLASSES);
+        int[] pixels = new int[IMAGE_PIXELS];
+        FloatBuffer floats = FloatBuffer.allocate(inputSize);
+        ByteBuffer quantized = ByteBuffer.allocate(inputSize);
+        float[] dequantized = new float[inputSize];
+        for (int image = 0; image < IMAGE_COUNT; image++) {
+            // A smooth gradient in a random tint with some sensor noise on top
+            int tint = random.nextInt(0x1000000);
+            for (int i = 0; i < IMAGE_PIXELS; i++) {
+                int shade = (i % 16 + i / 16) * 4 + random.nextInt(16);
+                int r = Math.min(255, ((tint >> 16) & 0xFF) / 2 + shade);
+                int g = Math.min(255, ((tint >> 8) & 0xFF) / 2 + shade);
+                int b = Math.min(255, (tint & 0xFF) / 2 + shade);
+                pixels[i] = 0xFF000000 | r << 16 | g << 8 | b;
+            }
+            floats.clear();
+            ImagePreprocessor.fillInputBuffer(pixels, IMAGE_PIXELS, floats);
+            quantized.clear();
+            ImagePreprocessor.fillQuantizedInputBuffer(pixels, IMAGE_PIXELS, table, quantized);
+            for (int i = 0; i < inputSize; i++) {
+                byte value = quantized.get(i);
+                dequantized[i] = ((signed ? value : value & 0xFF) - zeroPoint) * scale;
+            }
+            report.add(classify(weights, floats.array()), classify(weights, dequantized));
+        }
+        return report;
+    }
+
+    private static float[] classify(float[][] weights, float[] input) {
+        double[] logits = new double[weights.length];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < weights.length; c++) {
+            double sum = 0;
+            for (int i = 0; i < input.length; i++) {
+                sum += weights[c][i] * (input[i] - 0.5f);
+            }
+            logits[c] = sum / Math.sqrt(input.length) * 4;
+            max = Math.max(max, logits[c]);
+        }
+        double total = 0;
+        for (int c = 0; c < logits.length; c++) {
+            logits[c] = Math.exp(logits[c] - max);
+            total += logits[c];
+        }
+        float[] probabilities = new float[logits.length];
+        for (int c = 0; c < logits.length; c++) {
+            probabilities[c] = (float) (logits[c] / total);
+        }
+        return probabilities;
+    }
+
+    private Map<String, float[]> readResource(String path) throws IOException {
+        InputStream in = getClass().getClassLoader().getResourceAsStream(path);
+        assertNotNull("Missing " + path + ": run the notebook's \"Parity export\" cell and copy"
+                + " /kaggle/working/parity/*.csv to app/src/test/resources/parity/", in);
+        try (InputStreamReader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return ModelParityReport.readCsv(reader);
+        }
+    }
+}
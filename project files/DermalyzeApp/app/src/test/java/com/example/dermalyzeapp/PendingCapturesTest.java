@@ -0,0 +1,32 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PendingCapturesTest {
+    @Test
+    public void put_handsOutDistinctIds() {
+        byte[] jpeg = {(byte) 0xFF, (byte) 0xD8};
+        String first = PendingCaptures.put(jpeg, 90);
+        String second = PendingCaptures.put(jpeg, 0);
+
+        assertNotEquals(first, second);
+        assertSame(jpeg, PendingCaptures.get(first).jpeg);
+        assertEquals(90, PendingCaptures.get(first).rotationDegrees);
+
+        PendingCaptures.remove(first);
+        PendingCaptures.remove(second);
+        assertNull(PendingCaptures.get(first));
+    }
+
+    @Test
+    public void put_dropsUnclaimedCapturesBeyondTheLimit() {
+        String oldest = PendingCaptures.put(new byte[1], 0);
+        for (int i = 0; i < PendingCaptures.MAX_PENDING; i++) {
+            PendingCaptures.put(new byte[1], 0);
+        }
+
+        assertNull(PendingCaptures.get(oldest));
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class PredictionPostProcessorTest {
+    private static final int MEL = 4;
+    private static final int NV = 5;
+
+    private static PredictionPostProcessor withMelanomaThreshold(float threshold) {
+        float[] thresholds = {0.5f, 0.5f, 0.5f, 0.5f, threshold, 0.5f, 0.5f};
+        return new PredictionPostProcessor(1f, thresholds);
+    }
+
+    @Test
+    public void topK_isSortedByProbability() {
+        float[] probabilities = {0.05f, 0.1f, 0.02f, 0.03f, 0.6f, 0.15f, 0.05f};
+        PredictionPostProcessor.TopK top = new PredictionPostProcessor.TopK(3);
+
+        PredictionPostProcessor.topK(probabilities, top);
+
+        assertEquals(3, top.size);
+        assertArrayEquals(new int[]{4, 5, 1}, top.indices);
+        assertArrayEquals(new float[]{0.6f, 0.15f, 0.1f}, top.probabilities, 0f);
+    }
+
+    @Test
+    public void topK_tiesKeepLowerIndexFirst() {
+        float[] probabilities = {0.1f, 0.3f, 0.1f, 0.3f, 0.2f};
+        PredictionPostProcessor.TopK top = new PredictionPostProcessor.TopK(4);
+
+        PredictionPostProcessor.topK(probabilities, top);
+
+        assertArrayEquals(new int[]{1, 3, 4, 0}, top.indices);
+    }
+
+    @Test
+    public void process_defaultsMatchArgmaxAndGlobalThreshold() {
+        float[] probabilities = {0.05f, 0.1f, 0.02f, 0.03f, 0.6f, 0.15f, 0.05f};
+
+        PredictionPostProcessor.Prediction prediction = PredictionPostProcessor.defaults().process(probabilities);
+
+        assertTrue(prediction.isConfident());
+        assertEquals(SkinConditions.argmax(probabilities), prediction.conditionIndex);
+        assertEquals(0.6f, prediction.getConfidence(), 0f);
+    }
+
+    @Test
+    public void process_belowEveryThresholdIsNotConfident() {
+        float[] probabilities = {0.1f, 0.1f, 0.1f, 0.1f, 0.2f, 0.3f, 0.1f};
+
+        PredictionPostProcessor.Prediction prediction = PredictionPostProcessor.defaults().process(probabilities);
+
+        assertFalse(prediction.isConfident());
+        assertEquals(-1, prediction.conditionIndex);
+        assertEquals(NV, prediction.top.indices[0]);
+        assertEquals(0.3f, prediction.getConfidence(), 0f);
+    }
+
+    @Test
+    public void process_lowerMelanomaThresholdFlagsIt() {
+        float[] probabilities = {0.05f, 0.05f, 0.05f, 0.05f, 0.38f, 0.4f, 0.02f};
+
+        assertFalse(PredictionPostProcessor.defaults().process(probabilities).isConfident());
+        PredictionPostProcessor.Prediction prediction = withMelanomaThreshold(0.35f).process(probabilities);
+
+        assertEquals(MEL, prediction.conditionIndex);
+        assertEquals(0.38f, prediction.getConfidence(), 0f);
+        // The ranking itself is unchanged
+        assertEquals(NV, prediction.top.indices[0]);
+    }
+
+    @Test
+    public void process_prefersMostProbableClassAboveItsThreshold() {
+        float[] probabilities = {0.02f, 0.02f, 0.02f, 0.02f, 0.36f, 0.55f, 0.01f};
+
+        assertEquals(NV, withMelanomaThreshold(0.35f).process(probabilities).conditionIndex);
+    }
+
+    @Test
+    public void calibrate_temperatureOneIsACopy() {
+        float[] probabilities = {0.7f, 0.2f, 0.1f};
+        float[] calibrated = new float[3];
+
+        PredictionPostProcessor.calibrate(probabilities, 1f, calibrated);
+
+        assertArrayEquals(probabilities, calibrated, 0f);
+    }
+
+    @Test
+    public void calibrate_softensAndSharpens() {
+        float[] probabilities = {0.64f, 0.16f, 0.16f, 0.04f};
+        float[] softened = new float[4];
+        float[] sharpened = new float[4];
+
+        PredictionPostProcessor.calibrate(probabilities, 2f, softened);
+        PredictionPostProcessor.calibrate(probabilities, 0.5f, sharpened);
+
+        // p^(1/T), renormalized: square roots 0.8, 0.4, 0.4, 0.2 and squares 0.4096, 0.0256, 0.0256, 0.0016
+        assertArrayEquals(new float[]{0.8f / 1.8f, 0.4f / 1.8f, 0.4f / 1.8f, 0.2f / 1.8f}, softened, 1e-6f);
+        assertArrayEquals(new float[]{0.4096f / 0.4624f, 0.0256f / 0.4624f, 0.0256f / 0.4624f, 0.0016f / 0.4624f},
+                sharpened, 1e-6f);
+    }
+
+    @Test
+    public void calibrate_handlesZeroProbabilities() {
+        float[] probabilities = {1f, 0f, 0f};
+        float[] calibrated = new float[3];
+
+        PredictionPostProcessor.calibrate(probabilities, 3f, calibrated);
+
+        float sum = 0;
+        for (float p : calibrated) {
+            assertFalse(Float.isNaN(p));
+            sum += p;
+        }
+        assertEquals(1f, sum, 1e-6f);
+        assertTrue(calibrated[0] > 0.9f);
+    }
+
+    @Test
+    public void process_temperatureCanDropBelowThreshold() {
+        float[] probabilities = {0.02f, 0.02f, 0.02f, 0.02f, 0.02f, 0.55f, 0.35f};
+        float[] thresholds = new float[7];
+        Arrays.fill(thresholds, 0.5f);
+
+        PredictionPostProcessor.Prediction prediction =
+                new PredictionPostProcessor(1.5f, thresholds).process(probabilities);
+
+        assertFalse(prediction.isConfident());
+        assertEquals(NV, prediction.top.indices[0]);
+        assertTrue(prediction.top.probabilities[0] < 0.55f);
+    }
+
+    @Test
+    public void fromProperties_readsTemperatureAndThresholdsByCode() {
+        Properties properties = new Properties();
+        properties.setProperty("temperature", "1.5");
+        properties.setProperty("threshold.default", "0.6");
+        properties.setProperty("threshold.mel", " 0.35 ");
+
+        PredictionPostProcessor postProcessor = PredictionPostProcessor.fromProperties(properties);
+
+        assertEquals(1.5f, postProcessor.getTemperature(), 0f);
+        assertEquals(0.35f, postProcessor.getThreshold(MEL), 0f);
+        assertEquals(0.6f, postProcessor.getThreshold(NV), 0f);
+        assertEquals(0.6f, postProcessor.getThreshold(0), 0f);
+    }
+
+    @Test
+    public void fromProperties_emptyIsDefaults() {
+        PredictionPostProcessor postProcessor = PredictionPostProcessor.fromProperties(new Properties());
+
+        assertEquals(1f, postProcessor.getTemperature(), 0f);
+        for (int i = 0; i < SkinConditions.NAMES.length; i++) {
+            assertEquals(SkinConditions.PROBABILITY_THRESHOLD, postProcessor.getThreshold(i), 0f);
+        }
+    }
+
+    @Test
+    public void fromProperties_rejectsBadSettings() {
+        String[][] bad = {
+                {"threshold.melanoma", "0.3"},
+                {"treshold.mel", "0.3"},
+                {"threshold.mel", "0"},
+                {"threshold.mel", "1.2"},
+                {"temperature", "-1"},
+                {"temperature", "warm"}
+        };
+        for (String[] setting : bad) {
+            Properties properties = new Properties();
+            properties.setProperty(setting[0], setting[1]);
+            try {
+                PredictionPostProcessor.fromProperties(properties);
+                fail("Accepted " + setting[0] + "=" + setting[1]);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void skinConditions_findIsExactAndIndexOfFallsBack() {
+        for (int i = 0; i < SkinConditions.NAMES.length; i++) {
+            assertEquals(i, SkinConditions.find(SkinConditions.NAMES[i]));
+        }
+        assertEquals(-1, SkinConditions.find("Psoriasis"));
+        assertEquals(-1, SkinConditions.find(null));
+        assertEquals(0, SkinConditions.indexOf("Psoriasis"));
+    }
+
+    @Test
+    public void scanResult_conditionIndexFallsBackToName() {
+        ScanResult legacy = new ScanResult("a", null, SkinConditions.NAMES[MEL], 0.9, null, "");
+        assertEquals(MEL, legacy.getConditionIndex());
+
+        legacy.setConditionIndex(NV);
+        assertEquals(NV, legacy.getConditionIndex());
+
+        assertEquals(-1, new ScanResult("b", null, "Psoriasis", 0.9, null, "").getConditionIndex());
+    }
+}
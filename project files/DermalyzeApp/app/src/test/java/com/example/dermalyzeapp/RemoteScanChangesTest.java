@@ -0,0 +1,72 @@
+package com.example.dermalyzeapp;
+
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RemoteScanChangesTest {
+
+    static ScanResult scan(String id, long seconds) {
+        return new ScanResult(id, "/scans/scan_" + id + ".jpg", SkinConditions.NAMES[0], 0.9,
+                new Timestamp(seconds, 0), "");
+    }
+
+    private static List<String> ids(List<ScanResult> scans) {
+        List<String> ids = new ArrayList<>();
+        for (ScanResult scan : scans) {
+            ids.add(scan.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void put_replacesEarlierChangeToSameScan() {
+        RemoteScanChanges changes = new RemoteScanChanges();
+        changes.put(scan("a", 100));
+        changes.put(scan("b", 200));
+        changes.put(scan("a", 300));
+
+        List<ScanResult> upserts = changes.upserts(Collections.emptySet());
+        assertEquals(List.of("a", "b"), ids(upserts));
+        assertEquals(300, upserts.get(0).getTimestamp().getSeconds());
+    }
+
+    @Test
+    public void lastChangeWins() {
+        RemoteScanChanges changes = new RemoteScanChanges();
+        changes.put(scan("a", 100));
+        changes.remove("a");
+        changes.remove("b");
+        changes.put(scan("b", 200));
+
+        assertEquals(List.of("b"), ids(changes.upserts(Collections.emptySet())));
+        assertEquals(List.of("a"), changes.removals(Collections.emptySet()));
+        assertEquals(List.of("b", "a"), changes.ids());
+    }
+
+    @Test
+    public void pendingScansAreLeftAlone() {
+        RemoteScanChanges changes = new RemoteScanChanges();
+        changes.put(scan("a", 100));
+        changes.put(scan("b", 200));
+        changes.remove("c");
+
+        assertEquals(List.of("b"), ids(changes.upserts(List.of("a", "c"))));
+        assertTrue(changes.removals(List.of("a", "c")).isEmpty());
+    }
+
+    @Test
+    public void isEmpty_untilSomethingChanges() {
+        RemoteScanChanges changes = new RemoteScanChanges();
+        assertTrue(changes.isEmpty());
+
+        changes.remove("a");
+        assertFalse(changes.isEmpty());
+    }
+}
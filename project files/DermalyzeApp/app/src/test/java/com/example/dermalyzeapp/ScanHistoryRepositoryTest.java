@@ -0,0 +1,139 @@
+package com.example.dermalyzeapp;
+
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The observer contract screens rely on, checked against {@link FakeScanHistoryRepository}.
+ */
+public class ScanHistoryRepositoryTest {
+    private static final String USER = "user";
+
+    private static final class RecordingObserver implements ScanHistoryRepository.Observer {
+        final List<List<ScanResult>> updates = new ArrayList<>();
+        final List<Exception> errors = new ArrayList<>();
+
+        @Override
+        public void onScansChanged(List<ScanResult> scans) {
+            updates.add(scans);
+        }
+
+        @Override
+        public void onError(Exception e) {
+            errors.add(e);
+        }
+
+        List<ScanResult> latest() {
+            return updates.get(updates.size() - 1);
+        }
+    }
+
+    private static ScanResult scan(String id, long seconds) {
+        return new ScanResult(id, "/scans/scan_" + id + ".jpg", SkinConditions.NAMES[0], 0.9,
+                new Timestamp(seconds, 0), "");
+    }
+
+    @Test
+    public void observe_deliversCurrentScansImmediately() {
+        FakeScanHistoryRepository repository = new FakeScanHistoryRepository();
+        repository.add(USER, scan("a", 100));
+        RecordingObserver observer = new RecordingObserver();
+
+        repository.observe(USER, observer);
+
+        assertEquals(1, observer.updates.size());
+        assertEquals("a", observer.latest().get(0).getId());
+    }
+
+    @Test
+    public void newScan_reachesEveryObserverAtTheTop() {
+        FakeScanHistoryRepository repository = new FakeScanHistoryRepository();
+        repository.add(USER, scan("a", 100));
+        RecordingObserver home = new RecordingObserver();
+        RecordingObserver history = new RecordingObserver();
+        repository.observe(USER, home);
+        repository.observe(USER, history);
+
+        repository.add(USER, scan("b", 200));
+
+        assertEquals("b", home.latest().get(0).getId());
+        assertEquals("b", history.latest().get(0).getId());
+        assertEquals(2, history.latest().size());
+    }
+
+    @Test
+    public void save_reportsSuccessAndPublishesTheScans() {
+        FakeScanHistoryRepository repository = new FakeScanHistoryRepository();
+        repository.add(USER, scan("a", 100));
+        RecordingObserver observer = new RecordingObserver();
+        repository.observe(USER, observer);
+        boolean[] saved = new boolean[1];
+
+        repository.save(USER, Arrays.asList(scan("b", 200), scan("c", 50)),
+                new ScanHistoryRepository.SaveCallback() {
+                    @Override
+                    public void onSaved() {
+                        saved[0] = true;
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        fail(e.getMessage());
+                    }
+                });
+
+        assertTrue(saved[0]);
+        assertEquals(3, observer.latest().size());
+        assertEquals("b", observer.latest().get(0).getId());
+        assertEquals("c", observer.latest().get(2).getId());
+    }
+
+    @Test
+    public void removedSubscription_stopsUpdates() {
+        FakeScanHistoryRepository repository = new FakeScanHistoryRepository();
+        RecordingObserver observer = new RecordingObserver();
+        ScanHistoryRepository.Subscription subscription = repository.observe(USER, observer);
+
+        subscription.remove();
+        repository.add(USER, scan("a", 100));
+
+        assertEquals(1, observer.updates.size());
+        assertTrue(observer.latest().isEmpty());
+    }
+
+    @Test
+    public void loadMore_growsTheWindowByAPage() {
+        FakeScanHistoryRepository repository = new FakeScanHistoryRepository();
+        for (int i = 0; i < ScanHistoryRepository.PAGE_SIZE + 5; i++) {
+            repository.add(USER, scan("scan" + i, i));
+        }
+        RecordingObserver observer = new RecordingObserver();
+        repository.observe(USER, observer);
+
+        assertEquals(ScanHistoryRepository.PAGE_SIZE, observer.latest().size());
+        assertTrue(repository.hasMore(USER));
+
+        repository.loadMore(USER);
+
+        assertEquals(ScanHistoryRepository.PAGE_SIZE + 5, observer.latest().size());
+        assertFalse(repository.hasMore(USER));
+    }
+
+    @Test
+    public void errors_reachObservers() {
+        FakeScanHistoryRepository repository = new FakeScanHistoryRepository();
+        RecordingObserver observer = new RecordingObserver();
+        repository.observe(USER, observer);
+
+        repository.fail(USER, new IllegalStateException("offline"));
+
+        assertEquals(1, observer.errors.size());
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.dermalyzeapp;
+
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class ScanResultTest {
+    private static final DateTimeFormatter UTC_FORMAT =
+            DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm", Locale.US).withZone(ZoneOffset.UTC);
+
+    @Test
+    public void labels_areFormattedOnceAndReused() {
+        ScanResult scan = new ScanResult("a", null, SkinConditions.NAMES[0], 0.876,
+                new Timestamp(1704110400L, 0), "");
+
+        String date = scan.dateLabel(UTC_FORMAT);
+        String confidence = scan.confidenceLabel();
+
+        assertEquals("Jan 01, 2024 12:00", date);
+        assertEquals("Confidence: 87.6%", confidence);
+        assertSame(date, scan.dateLabel(UTC_FORMAT));
+        assertSame(confidence, scan.confidenceLabel());
+    }
+
+    @Test
+    public void stableId_dependsOnlyOnId() {
+        ScanResult scan = new ScanResult("20240101_120000", null, SkinConditions.NAMES[0], 0.5,
+                new Timestamp(1704110400L, 0), "");
+        ScanResult copy = new ScanResult("20240101_120000", null, SkinConditions.NAMES[1], 0.9,
+                new Timestamp(1704114000L, 0), "");
+
+        assertEquals(scan.stableId(), copy.stableId());
+        assertNotEquals(scan.stableId(), new ScanResult("20240101_120000_0", null, SkinConditions.NAMES[0], 0.5,
+                new Timestamp(1704110400L, 0), "").stableId());
+        assertNotEquals(-1, new ScanResult().stableId());
+    }
+
+    @Test
+    public void labels_followSetters() {
+        ScanResult scan = new ScanResult("a", null, SkinConditions.NAMES[0], 0.5,
+                new Timestamp(1704110400L, 0), "");
+        scan.dateLabel(UTC_FORMAT);
+        scan.confidenceLabel();
+
+        scan.setTimestamp(new Timestamp(1704114000L, 0));
+        scan.setConfidence(0.25);
+
+        assertEquals("Jan 01, 2024 13:00", scan.dateLabel(UTC_FORMAT));
+        assertEquals("Confidence: 25.0%", scan.confidenceLabel());
+    }
+
+    @Test
+    public void dateLabel_isEmptyWithoutTimestamp() {
+        assertEquals("", new ScanResult().dateLabel(UTC_FORMAT));
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class ScanThumbnailsTest {
+    @Test
+    public void fileFor_sitsNextToTheScan() {
+        File thumbnail = ScanThumbnails.fileFor(new File("/data/scans/scan_20240101_120000.jpg"));
+
+        assertEquals(new File("/data/scans/scan_20240101_120000_thumb.webp"), thumbnail);
+    }
+
+    @Test
+    public void fileFor_keepsNamesWithoutExtension() {
+        File thumbnail = ScanThumbnails.fileFor(new File("/data/scans/scan_1"));
+
+        assertEquals(new File("/data/scans/scan_1_thumb.webp"), thumbnail);
+    }
+}
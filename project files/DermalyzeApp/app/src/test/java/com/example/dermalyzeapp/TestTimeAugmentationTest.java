@@ -0,0 +1,39 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TestTimeAugmentationTest {
+
+    @Test
+    public void chooseCount_startsWithInitialCount() {
+        assertEquals(TestTimeAugmentation.INITIAL_COUNT, TestTimeAugmentation.chooseCount(1200, -1, 10));
+    }
+
+    @Test
+    public void chooseCount_fitsTheBudget() {
+        assertEquals(10, TestTimeAugmentation.chooseCount(1200, 50, 10));
+        assertEquals(6, TestTimeAugmentation.chooseCount(1200, 200, 10));
+        assertEquals(1, TestTimeAugmentation.chooseCount(1200, 5000, 10));
+    }
+
+    @Test
+    public void updateEstimate_smoothsSamples() {
+        assertEquals(100, TestTimeAugmentation.updateEstimate(-1, 100), 1e-9);
+        assertEquals(130, TestTimeAugmentation.updateEstimate(100, 200), 1e-9);
+    }
+
+    @Test
+    public void average_isMeanOfRows() {
+        float[][] rows = {
+                {0.8f, 0.2f, 0f},
+                {0.4f, 0.4f, 0.2f}
+        };
+        float[] mean = {9f, 9f, 9f};
+
+        TestTimeAugmentation.average(rows, mean);
+
+        assertArrayEquals(new float[]{0.6f, 0.3f, 0.1f}, mean, 1e-6f);
+    }
+}
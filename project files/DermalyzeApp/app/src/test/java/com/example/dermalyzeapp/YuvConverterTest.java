@@ -0,0 +1,77 @@
+package com.example.dermalyzeapp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class YuvConverterTest {
+    private static final int WIDTH = 6;
+    private static final int HEIGHT = 4;
+
+    /**
+     * A frame whose luma encodes its own coordinates (10 * y + x) and whose chroma is neutral,
+     * with padded rows and interleaved chroma like most camera HALs produce.
+     */
+    private static int[] convert(int rotationDegrees) {
+        int yRowStride = WIDTH + 2;
+        ByteBuffer y = ByteBuffer.allocate(yRowStride * HEIGHT);
+        for (int row = 0; row < HEIGHT; row++) {
+            for (int col = 0; col < WIDTH; col++) {
+                y.put(row * yRowStride + col, (byte) (10 * row + col));
+            }
+        }
+        int uvRowStride = WIDTH;
+        ByteBuffer u = ByteBuffer.allocate(uvRowStride * HEIGHT / 2);
+        ByteBuffer v = ByteBuffer.allocate(uvRowStride * HEIGHT / 2);
+        for (int i = 0; i < u.capacity(); i++) {
+            u.put(i, (byte) 128);
+            v.put(i, (byte) 128);
+        }
+
+        int[] out = new int[HEIGHT * HEIGHT];
+        YuvConverter.toArgb(y, yRowStride, 1, u, v, uvRowStride, 2, WIDTH, HEIGHT, rotationDegrees, HEIGHT, out);
+        return out;
+    }
+
+    private static int lumaAt(int[] pixels, int x, int y) {
+        int pixel = pixels[y * HEIGHT + x];
+        assertEquals((pixel >> 16) & 0xFF, pixel & 0xFF);
+        return pixel & 0xFF;
+    }
+
+    @Test
+    public void toArgb_cropsTheCentreSquare() {
+        int[] out = convert(0);
+
+        // Columns 1-4 of the 6-wide frame
+        assertEquals(1, lumaAt(out, 0, 0));
+        assertEquals(4, lumaAt(out, 3, 0));
+        assertEquals(31, lumaAt(out, 0, 3));
+    }
+
+    @Test
+    public void toArgb_turnsFramesUpright() {
+        int[] rotated90 = convert(90);
+        // The bottom-left of the crop ends up top-left after a clockwise quarter turn
+        assertEquals(31, lumaAt(rotated90, 0, 0));
+        assertEquals(1, lumaAt(rotated90, 3, 0));
+
+        int[] rotated180 = convert(180);
+        assertEquals(34, lumaAt(rotated180, 0, 0));
+
+        int[] rotated270 = convert(270);
+        assertEquals(4, lumaAt(rotated270, 0, 0));
+    }
+
+    @Test
+    public void toArgb_convertsColours() {
+        assertEquals(0xFF808080, YuvConverter.toArgb(128, 0, 0));
+        // Saturated red in full-range BT.601
+        int red = YuvConverter.toArgb(76, -43, 127);
+        assertTrue(((red >> 16) & 0xFF) > 250);
+        assertTrue(((red >> 8) & 0xFF) < 5);
+        assertTrue((red & 0xFF) < 5);
+    }
+}
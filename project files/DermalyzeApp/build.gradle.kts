@@ -1,6 +1,7 @@
 // Top-level build file where you can add configuration options common to all sub-projects/modules.
 plugins {
     id("com.android.application") version "8.3.0" apply false
+    id("com.android.test") version "8.3.0" apply false
     id("com.google.gms.google-services") version "4.4.0" apply false
 }
 
@@ -0,0 +1,66 @@
+package com.example.dermalyzeapp.macrobenchmark;
+
+import android.content.Intent;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Frame timing while flinging through 1,000 history rows.
+ *
+ * Run with {@code ./gradlew :macrobenchmark:connectedBenchmarkAndroidTest}; compare
+ * {@code frameDurationCpuMs} and {@code frameOverrunMs} before and after a change to the
+ * row binding. It has not been run on a device yet, so there are no recorded numbers and the
+ * effect of the allocation-free row binding on frame times is unverified.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HistoryScrollBenchmark {
+    private static final String PACKAGE_NAME = "com.example.dermalyzeapp";
+    private static final int ROW_COUNT = 1000;
+    private static final int FLINGS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void scrollHistory() {
+        benchmarkRule.measureRepeated(
+                PACKAGE_NAME,
+                Collections.singletonList(new FrameTimingMetric()),
+                CompilationMode.DEFAULT,
+                null,
+                5,
+                scope -> {
+                    Intent intent = new Intent();
+                    intent.setClassName(PACKAGE_NAME, PACKAGE_NAME + ".ScrollFixtureActivity");
+                    intent.putExtra("rowCount", ROW_COUNT);
+                    scope.startActivityAndWait(intent);
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    UiDevice device = scope.getDevice();
+                    UiObject2 scanList = device.findObject(By.res(PACKAGE_NAME, "scanList"));
+                    // Keep the gesture clear of the system navigation areas
+                    scanList.setGestureMargin(device.getDisplayWidth() / 5);
+                    for (int i = 0; i < FLINGS; i++) {
+                        scanList.fling(Direction.DOWN);
+                        device.waitForIdle();
+                    }
+                    return Unit.INSTANCE;
+                });
+    }
+}
@@ -21,4 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "Dermalyze App"
 include(":app")
+include(":macrobenchmark")
  
\ No newline at end of file